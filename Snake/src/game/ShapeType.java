@@ -94,7 +94,9 @@ public abstract class ShapeType implements ElementType {
 
     @Override
     public ExtensiblePanel getUI() {
-        return new StackPanel(new ShapeUI(this));
+        ExtensiblePanel ui = new StackPanel(new ShapeUI(this));
+        ui.setTrackChanges(true); // Solo se guarda, y se reinicia la partida, si se cambia algo
+        return ui;
     }
 
     /**
@@ -21,7 +21,6 @@ import game.Snake.Tail;
 import java.awt.event.ActionEvent;
 import javax.swing.AbstractAction;
 import libqew.ExtensiblePanel;
-import libqew.TabsPanel;
 import ui.SnakeUI;
 import utils.GeometryUtils;
 
@@ -98,12 +97,18 @@ public class Snake extends UnitType {
 
     @Override
     public ExtensiblePanel getUI() {
-        TabsPanel ui = (TabsPanel) super.getUI();
-        ((ExtensiblePanel) ui.getTab(1)).addChild(new SnakeUI(this));
+        ExtensiblePanel ui = super.getUI();
         ui.setName("Snake");
         return ui;
     }
 
+    @Override
+    protected ExtensiblePanel getUnitUI() {
+        ExtensiblePanel ui = super.getUnitUI();
+        ui.addChild(new SnakeUI(this));
+        return ui;
+    }
+
     /**
      * Obtiene la rotación inicial que tienen los fragmentos de la cola.
      *
@@ -16,7 +16,9 @@
  */
 package game;
 
+import java.awt.Component;
 import java.awt.Polygon;
+import java.util.function.Supplier;
 import libqew.ExtensiblePanel;
 import libqew.StackPanel;
 import libqew.TabsPanel;
@@ -49,14 +51,33 @@ public class UnitType extends ShapeType {
 
     @Override
     public ExtensiblePanel getUI() {
-        ExtensiblePanel shapeui = super.getUI();
         TabsPanel ui = new TabsPanel();
-        ui.addChild(shapeui);
-        StackPanel unitui = new StackPanel(new UnitUI(this));
-        ui.addChild(unitui);
+        ui.addTab("Shape", new Supplier<Component>() { // Cada pestaña se construye al seleccionarse
+            @Override
+            public Component get() {
+                return UnitType.super.getUI();
+            }
+        });
+        ui.addTab("Unit", new Supplier<Component>() {
+            @Override
+            public Component get() {
+                return getUnitUI();
+            }
+        });
+        ui.setTrackChanges(true); // Solo se guarda, y se reinicia la partida, si se cambia algo
         return ui;
     }
 
+    /**
+     * Construye la GUI de la segunda pestaña, con las propiedades de la unidad.
+     * Los tipos derivados pueden extenderla con sus propias propiedades.
+     *
+     * @return la GUI de las propiedades de la unidad
+     */
+    protected ExtensiblePanel getUnitUI() {
+        return new StackPanel(new UnitUI(this));
+    }
+
     /**
      * Obtiene la rotación inicial.
      *
@@ -19,14 +19,19 @@ package ui;
 import game.Enemies;
 import game.EnemyType;
 import java.awt.BorderLayout;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.GridBagLayout;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.function.Supplier;
 import javax.swing.JScrollPane;
 import javax.swing.table.AbstractTableModel;
+import javax.swing.tree.MutableTreeNode;
 import libqew.ExtensibleFrame.WindowCloseListener;
 import libqew.ExtensiblePanel;
 import libqew.TreeNodePanel;
+import libqew.TreeViewPanel.LazyNode;
 import libqew.TreeViewPanel.Node;
 import utils.AutoadjustableTable;
 import utils.ColorUtils.ColorName;
@@ -47,6 +52,13 @@ import utils.Synchronizer;
 public class EnemiesUI extends TreeNodePanel implements WindowCloseListener {
 
     private static final String[] columnKeys = {"fill", "fillColor", "border", "borderColor", "rotate", "clockwise", "angularSpeed", "turningSpeed", "initialAngle", "speed", "radius", "sides", "copies"};
+    private static final HashMap<String, Integer> COLUMNS = new HashMap<>(); // Columna de la tabla de cada dato
+
+    static {
+        for (int i = 0; i < columnKeys.length; i++) {
+            COLUMNS.put(columnKeys[i], i);
+        }
+    }
 
     private ArrayList<EnemyType> list;
     private final Enemies enemies;
@@ -84,6 +96,7 @@ public class EnemiesUI extends TreeNodePanel implements WindowCloseListener {
         ((TableEnemiesModel) tableEnemies.getModel()).fireTableRowsInserted(0, list.size() - 1);
         total.setText("Total: " + list.size() + " enemies.");
         linkActions();
+        setTrackChanges(true); // Solo se guarda, y se reinicia la partida, si se cambia algo
     }
 
     @Override
@@ -126,9 +139,7 @@ public class EnemiesUI extends TreeNodePanel implements WindowCloseListener {
             int n = (int) Mailbox.receiveMessage("ENEMIESUI_OPEN");
             Mailbox.sendMessage("ENEMIESUI_OPEN", ++n);
         }
-        for (EnemyType enemy : list) {
-            addEnemyUI(enemy);
-        }
+        addEnemiesUI(0);
     }
 
     /**
@@ -152,8 +163,11 @@ public class EnemiesUI extends TreeNodePanel implements WindowCloseListener {
                 tableEnemies.clearSelection(); // Se elimina la selección ya que serán siempre los eliminados
                 int index = (int) message;
                 ((TableEnemiesModel) tableEnemies.getModel()).fireTableRowDeleted(index);
-                // Hay que avisar a la GUI borrada para que libere sus recursos
-                ((ExtensiblePanel) ((Node) getNode().getChildAt(index)).getUserObject()).cleanAll();
+                // Hay que avisar a la GUI borrada para que libere sus recursos, si llegó a crearse
+                Object ui = ((Node) getNode().getChildAt(index)).getUserObject();
+                if (ui instanceof ExtensiblePanel) {
+                    ((ExtensiblePanel) ui).cleanAll();
+                }
                 getNode().removeChild(index);
                 total.setText("Total: " + list.size() + " enemies.");
             }
@@ -164,56 +178,71 @@ public class EnemiesUI extends TreeNodePanel implements WindowCloseListener {
                 int startRow = (int) message;
                 ((TableEnemiesModel) tableEnemies.getModel()).fireTableRowsInserted(startRow, list.size() - 1);
                 total.setText("Total: " + list.size() + " enemies.");
-                for (int i = startRow; i < list.size(); i++) {
-                    addEnemyUI(list.get(i));
-                }
+                addEnemiesUI(startRow);
             }
         };
     }
 
     /**
-     * Enlaza los datos de un enemigo en la tabla con su GUI.
+     * Enlaza los datos de un enemigo en la tabla y el nombre de su nodo con su
+     * GUI, mediante un único listener para todas sus claves.
      */
-    private void linkEnemy(EnemyType enemy) {
-        int column = 0;
-        for (String key : columnKeys) {
-            key = enemy.id() + key; // Identifica un dato de un enemigo concreto
-            int c = column;
-            column++;
-            new Synchronizer.Listener(key, enemy) {
-                @Override
-                public void receive(Object key, Object message) {
-                    int row = list.indexOf(enemy);
-                    // Hay que comprobar que el valor no sea el mismo para evitar un bucle de avisos a sí mismo
-                    if (!tableEnemies.getModel().getValueAt(row, c).equals(message)) {
-                        tableEnemies.getModel().setValueAt(message, row, c);
-                    }
-                    ((TableEnemiesModel) tableEnemies.getModel()).fireTableCellUpdated(row, c);
+    private void linkEnemy(EnemyType enemy, LazyNode node) {
+        new Synchronizer.Listener(enemy.id() + "/*", enemy) { // Cualquier dato de este enemigo
+            @Override
+            public void receive(Object key, Object message) {
+                String field = (String) key;
+                Integer column = COLUMNS.get(field.substring(field.lastIndexOf('/') + 1));
+                if (column == null) { // No es un dato de la tabla
+                    return;
                 }
-            };
-        }
+                int c = column;
+                int row = list.indexOf(enemy);
+                // Hay que comprobar que el valor no sea el mismo para evitar un bucle de avisos a sí mismo
+                if (!tableEnemies.getModel().getValueAt(row, c).equals(message)) {
+                    tableEnemies.getModel().setValueAt(message, row, c);
+                }
+                ((TableEnemiesModel) tableEnemies.getModel()).fireTableCellUpdated(row, c);
+                if (c == 1 || c == 11) { // El color y los lados forman parte del nombre de la GUI
+                    node.setName(enemy.toString());
+                }
+            }
+        };
     }
 
     /**
      * Añade la GUI de un enemigo como hija de ésta.
      */
     private void addEnemyUI(EnemyType enemy) {
-        ExtensiblePanel ui = enemy.getUI();
-        ui.setName(enemy.toString());
-        addChild(ui);
-        linkEnemy(enemy);
-        new Synchronizer.Listener(enemy.id() + columnKeys[1], enemy) { // Enlaza el color con el nombre de la GUI
-            @Override
-            public void receive(Object key, Object message) {
-                ui.setName(enemy.toString());
-            }
-        };
-        new Synchronizer.Listener(enemy.id() + columnKeys[11], enemy) { // Enlaza los lados con el nombre de la GUI
+        getNode().add(createEnemyNode(enemy));
+    }
+
+    /**
+     * Añade de una vez como hijas de ésta las GUIs de los enemigos de la lista
+     * a partir de la posición indicada.
+     */
+    private void addEnemiesUI(int start) {
+        ArrayList<MutableTreeNode> nodes = new ArrayList<>(list.size() - start);
+        for (int i = start; i < list.size(); i++) {
+            nodes.add(createEnemyNode(list.get(i)));
+        }
+        getNode().addChildren(nodes);
+    }
+
+    /**
+     * Crea el nodo con la GUI de un enemigo y la enlaza con sus datos.
+     */
+    private LazyNode createEnemyNode(EnemyType enemy) {
+        LazyNode node = new LazyNode(enemy.toString(), new Supplier<Component>() { // La GUI solo se crea si se llega a seleccionar
             @Override
-            public void receive(Object key, Object message) {
+            public Component get() {
+                ExtensiblePanel ui = enemy.getUI();
                 ui.setName(enemy.toString());
+                return ui;
             }
-        };
+        });
+        linkEnemy(enemy, node);
+        return node;
     }
 
     /**
@@ -728,7 +757,7 @@ public class EnemiesUI extends TreeNodePanel implements WindowCloseListener {
          * Notifica de que una celda de la tabla cambió.
          */
         private void fireTableCellUpdated(int rowIndex, int columnIndex, Object value) {
-            Messenger.sendMessage(list.get(rowIndex).id() + columnKeys[columnIndex], value);
+            Messenger.sendMessage(list.get(rowIndex).id() + "/" + columnKeys[columnIndex], value);
         }
 
         /**
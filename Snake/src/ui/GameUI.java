@@ -17,8 +17,11 @@
 package ui;
 
 import game.Game;
+import java.awt.Color;
+import javax.swing.BoundedRangeModel;
 import javax.swing.DefaultBoundedRangeModel;
 import javax.swing.JColorChooser;
+import javax.swing.SpinnerModel;
 import javax.swing.SpinnerNumberModel;
 import libqew.ExtensibleFrame.WindowCloseListener;
 import libqew.TreeNodePanel;
@@ -40,18 +43,58 @@ public class GameUI extends TreeNodePanel implements WindowCloseListener {
      * @param game el juego
      */
     public GameUI(Game game) {
+        this(game, new Settings(game));
+    }
+
+    /**
+     * Crea una nueva GUI que modifica los parámetros del juego a partir de
+     * unos valores ya leídos.
+     *
+     * @param game el juego
+     * @param settings los valores del juego y sus modelos
+     */
+    GameUI(Game game, Settings settings) {
         this.game = game;
         initComponents();
         setName("Game");
-        gameBackground.setBackground(game.getGameBackground());
-        sliderfps.setModel(new DefaultBoundedRangeModel((int) Math.min(60, 1000 / game.getMS()), 1, 5, 201));
-        fps.setModel(new SpinnerNumberModel((int) Math.min(60, 1000 / game.getMS()), 5, 200, 1));
-        sliderWidth.setModel(new DefaultBoundedRangeModel(game.getResolution().width, 1, 400, 4001));
-        width.setModel(new SpinnerNumberModel(game.getResolution().width, 100, 4000, 20));
-        sliderHeight.setModel(new DefaultBoundedRangeModel(game.getResolution().height, 1, 400, 4001));
-        height.setModel(new SpinnerNumberModel(game.getResolution().height, 100, 4000, 20));
-        showfps.setSelected(game.isShowFPS());
+        gameBackground.setBackground(settings.background);
+        sliderfps.setModel(settings.sliderfps);
+        fps.setModel(settings.fps);
+        sliderWidth.setModel(settings.sliderWidth);
+        width.setModel(settings.width);
+        sliderHeight.setModel(settings.sliderHeight);
+        height.setModel(settings.height);
+        showfps.setSelected(settings.showfps);
         Synchronizer.register(-1, this);
+        setTrackChanges(true); // Solo se guarda, y se reinicia la partida, si se cambia algo
+    }
+
+    /**
+     * Valores del juego que muestra la GUI, junto a los modelos que los
+     * contienen. No crea componentes, así que se puede preparar fuera del hilo
+     * de eventos.
+     */
+    static class Settings {
+
+        private final Color background;
+        private final BoundedRangeModel sliderfps;
+        private final SpinnerModel fps;
+        private final BoundedRangeModel sliderWidth;
+        private final SpinnerModel width;
+        private final BoundedRangeModel sliderHeight;
+        private final SpinnerModel height;
+        private final boolean showfps;
+
+        public Settings(Game game) {
+            background = game.getGameBackground();
+            sliderfps = new DefaultBoundedRangeModel((int) Math.min(60, 1000 / game.getMS()), 1, 5, 201);
+            fps = new SpinnerNumberModel((int) Math.min(60, 1000 / game.getMS()), 5, 200, 1);
+            sliderWidth = new DefaultBoundedRangeModel(game.getResolution().width, 1, 400, 4001);
+            width = new SpinnerNumberModel(game.getResolution().width, 100, 4000, 20);
+            sliderHeight = new DefaultBoundedRangeModel(game.getResolution().height, 1, 400, 4001);
+            height = new SpinnerNumberModel(game.getResolution().height, 100, 4000, 20);
+            showfps = game.isShowFPS();
+        }
     }
 
     @Override
@@ -21,17 +21,24 @@ import game.FoodType;
 import game.Game;
 import game.Snake;
 import java.awt.BorderLayout;
+import java.awt.Component;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowEvent;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import libqew.ExtensibleFrame;
+import libqew.ExtensibleFrame.AsyncContent;
 import libqew.ExtensibleFrame.WindowCloseListener;
-import libqew.TreeNodePanel;
+import libqew.StackPanel;
+import libqew.TabsPanel;
 import libqew.TreeViewPanel;
 import resources.Resources;
 
@@ -102,33 +109,70 @@ public class Menu extends JMenuBar {
             @Override
             public void actionPerformed(ActionEvent e) {
                 game.pause();
-                ExtensibleFrame.showWindow(snake.getUI(), Resources.getIcons()).setWindowCloseListener(listener);
+                ExtensibleFrame.showPooledWindow(snake.getUI(), Resources.getIcons()).setWindowCloseListener(listener);
             }
         });
         buttonEnemies.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
                 game.pause();
-                ExtensibleFrame.showWindow(enemies.getUI(), Resources.getIcons()).setWindowCloseListener(listener);
+                ExtensibleFrame.showPooledWindow(enemies.getUI(), Resources.getIcons()).setWindowCloseListener(listener);
             }
         });
         buttonFood.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
                 game.pause();
-                ExtensibleFrame.showWindow(food.getUI(), Resources.getIcons()).setWindowCloseListener(listener);
+                ExtensibleFrame.showPooledWindow(food.getUI(), Resources.getIcons()).setWindowCloseListener(listener);
             }
         });
         buttonOptions.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                TreeNodePanel gameui = new GameUI(game);
-                gameui.addChild(snake.getUI());
-                gameui.addChild(food.getUI());
-                gameui.addChild(enemies.getUI());
-                gameui.setName("Game");
                 game.pause();
-                ExtensibleFrame.showWindow(gameui, Resources.getIcons()).setWindowCloseListener(listener);
+                // La ventana aparece al instante, los valores del juego se leen fuera del hilo de eventos y cada parte se monta después sin bloquearla
+                ExtensibleFrame.showWindowAsync(new AsyncContent() {
+                    @Override
+                    public Supplier<? extends Component> prepare() {
+                        final GameUI.Settings settings = new GameUI.Settings(game);
+                        return new Supplier<Component>() {
+                            @Override
+                            public Component get() {
+                                return new GameUI(game, settings);
+                            }
+                        };
+                    }
+                }, Arrays.asList(new AsyncContent() {
+                    @Override
+                    public Supplier<? extends Component> prepare() {
+                        return new Supplier<Component>() {
+                            @Override
+                            public Component get() {
+                                return snake.getUI();
+                            }
+                        };
+                    }
+                }, new AsyncContent() {
+                    @Override
+                    public Supplier<? extends Component> prepare() {
+                        return new Supplier<Component>() {
+                            @Override
+                            public Component get() {
+                                return food.getUI();
+                            }
+                        };
+                    }
+                }, new AsyncContent() {
+                    @Override
+                    public Supplier<? extends Component> prepare() {
+                        return new Supplier<Component>() {
+                            @Override
+                            public Component get() {
+                                return enemies.getUI();
+                            }
+                        };
+                    }
+                }), Resources.getIcons(), ForkJoinPool.commonPool()).setWindowCloseListener(listener);
             }
         });
         buttonReset.addActionListener(new ActionListener() {
@@ -150,6 +194,14 @@ public class Menu extends JMenuBar {
                 game.dispatchEvent(new WindowEvent(game, WindowEvent.WINDOW_CLOSING));
             }
         });
+        SwingUtilities.invokeLater(new Runnable() { // Prepara las ventanas de edición cuando el juego ya se ha mostrado
+            @Override
+            public void run() {
+                ExtensibleFrame.prewarm(TabsPanel.class, 1); // Snake
+                ExtensibleFrame.prewarm(EnemiesUI.class, 1);
+                ExtensibleFrame.prewarm(StackPanel.class, 1); // Food
+            }
+        });
     }
 
 }
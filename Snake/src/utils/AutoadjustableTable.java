@@ -18,15 +18,14 @@ package utils;
 
 import java.awt.Component;
 import java.awt.Dimension;
-import java.awt.Window;
 import javax.swing.JTable;
-import javax.swing.SwingUtilities;
 import javax.swing.event.TableModelEvent;
 import javax.swing.event.TableModelListener;
 import javax.swing.table.TableCellRenderer;
 import javax.swing.table.TableColumn;
 import javax.swing.table.TableColumnModel;
 import javax.swing.table.TableModel;
+import libqew.Frame;
 
 /**
  * Tabla que se autoajusta cuando su contenido cambia.
@@ -58,10 +57,7 @@ public class AutoadjustableTable extends JTable {
                 Dimension newSize = getPreferredSize();
                 setPreferredScrollableViewportSize(newSize);
                 if (!newSize.equals(oldSize)) { // Si cambió el tamaño avisa a la ventana para que se reajuste
-                    Window window = (Window) SwingUtilities.getWindowAncestor(AutoadjustableTable.this);
-                    if (window != null) {
-                        window.pack();
-                    }
+                    Frame.repackAncestor(AutoadjustableTable.this);
                 }
             }
         });
@@ -19,6 +19,8 @@ package utils;
 import java.awt.Color;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -29,8 +31,10 @@ import javax.swing.JButton;
 import javax.swing.JSlider;
 import javax.swing.JSpinner;
 import javax.swing.JToggleButton;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import libqew.ExtensiblePanel;
 
 /**
  * Sincroniza grupos de elementos gráficos registrados con una misma clave.
@@ -51,8 +55,11 @@ public class Synchronizer {
      * los demás grupos registrados con el mismo identificador.
      * <p>
      * Es decir, la clave de cada elemento será:
-     * <code>identificador del grupo + nombre del campo del elemento</code> y
-     * todos los elementos con una clave idéntica estarán sincronizados.
+     * <code>identificador del grupo/nombre del campo del elemento</code> y
+     * todos los elementos con una clave idéntica estarán sincronizados. Al ser
+     * una clave jerárquica de {@link Messenger}, se pueden recibir los cambios
+     * de todos los elementos de un grupo con un único listener registrado con
+     * la clave <code>identificador del grupo/*</code>.
      *
      * @param id el identificador del grupo
      * @param object un objeto que contiene los elementos como campos
@@ -68,7 +75,7 @@ public class Synchronizer {
         for (Field field : fields) {
             try {
                 field.setAccessible(true);
-                String key = id + field.getName(); // Forma la clave del campo
+                String key = id + "/" + field.getName(); // Forma la clave del campo
                 // Solo implementado para estos tipos de elementos
                 if (JButton.class.isAssignableFrom(field.getType())) {
                     JButton button = (JButton) field.get(object);
@@ -87,6 +94,16 @@ public class Synchronizer {
                                 }
                             }
                         };
+                        // Solo cambia su fondo, que no detectan las GUIs que llevan la cuenta de los cambios, así que se marca la más cercana
+                        button.addPropertyChangeListener("background", new PropertyChangeListener() {
+                            @Override
+                            public void propertyChange(PropertyChangeEvent evt) {
+                                Object panel = SwingUtilities.getAncestorOfClass(ExtensiblePanel.class, button);
+                                if (panel != null) {
+                                    ((ExtensiblePanel) panel).markDirty();
+                                }
+                            }
+                        });
                         // Avisa a los demás para que se sincronicen al cambio
                         button.addChangeListener(new ChangeListener() {
                             @Override
@@ -113,7 +130,7 @@ public class Synchronizer {
                     comp.addChangeListener(new ChangeListener() {
                         @Override
                         public void stateChanged(ChangeEvent e) {
-                            Messenger.sendMessage(key, comp.getValue());
+                            Messenger.sendCoalescedMessage(key, comp.getValue()); // Al arrastrar solo se avisa del último valor
                             Mailbox.sendMessage(key, comp.getValue());
                         }
                     });
@@ -134,7 +151,7 @@ public class Synchronizer {
                     comp.addChangeListener(new ChangeListener() {
                         @Override
                         public void stateChanged(ChangeEvent e) {
-                            Messenger.sendMessage(key, comp.getValue());
+                            Messenger.sendCoalescedMessage(key, comp.getValue()); // Al arrastrar solo se avisa del último valor
                             Mailbox.sendMessage(key, comp.getValue());
                         }
                     });
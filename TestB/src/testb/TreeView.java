@@ -28,58 +28,62 @@ import utils.Messenger.MessageReceiver;
  */
 public class TreeView extends libqew.TreeViewPanel {
 
+    // Se guardan aquí porque se registran como listeners débiles y solo recibirán mensajes mientras exista esta GUI
+    private final MessageReceiver eliminar = new MessageReceiver() {
+        @Override
+        public void receive(Object key, Object message) {
+            MutableTreeNode seleccionado = getSelectedNode();
+            if (seleccionado != null) {
+                remove(seleccionado);
+            }
+        }
+    };
+    private final MessageReceiver insertar = new MessageReceiver() {
+        @Override
+        public void receive(Object key, Object message) {
+            String[] mensaje = (String[]) message;
+            String tipo = mensaje[0];
+            PanelBase panelBase = new PanelBase();
+            panelBase.setName(mensaje[1]);
+            MutableTreeNode nodo = getSelectedNode();
+            if (nodo == null) {
+                nodo = getRoot();
+            }
+            switch (tipo) {
+                case "Node":
+                    insertIntoNode(panelBase, nodo);
+                    break;
+                case "StackPanel":
+                    StackPanel stack;
+                    if (getSelectedComponent() instanceof StackPanel) {
+                        stack = (StackPanel) getSelectedComponent();
+                    } else {
+                        stack = new StackPanel(getSelectedComponent());
+                    }
+                    stack.addChild(panelBase);
+                    nodo.setUserObject(stack);
+                    break;
+                case "TabsPanel":
+                    TabsPanel tabs;
+                    if (getSelectedComponent() instanceof TabsPanel) {
+                        tabs = (TabsPanel) getSelectedComponent();
+                    } else {
+                        tabs = new TabsPanel(getSelectedComponent());
+                    }
+                    tabs.addChild(panelBase);
+                    nodo.setUserObject(tabs);
+                    break;
+            }
+        }
+    };
+
     /**
      * Creates new form TreeView
      */
     public TreeView() {
         initComponents();
-        Messenger.addListener("Eliminar", new MessageReceiver() {
-                          @Override
-                          public void receive(Object key, Object message) {
-                              MutableTreeNode seleccionado = getSelectedNode();
-                              if (seleccionado != null) {
-                                  remove(seleccionado);
-                              }
-                          }
-                      });
-        Messenger.addListener("Insertar", new MessageReceiver() {
-                          @Override
-                          public void receive(Object key, Object message) {
-                              String[] mensaje = (String[]) message;
-                              String tipo = mensaje[0];
-                              PanelBase panelBase = new PanelBase();
-                              panelBase.setName(mensaje[1]);
-                              MutableTreeNode nodo = getSelectedNode();
-                              if (nodo == null) {
-                                  nodo = getRoot();
-                              }
-                              switch (tipo) {
-                                  case "Node":
-                                      insertIntoNode(panelBase, nodo);
-                                      break;
-                                  case "StackPanel":
-                                      StackPanel stack;
-                                      if (getSelectedComponent() instanceof StackPanel) {
-                                          stack = (StackPanel) getSelectedComponent();
-                                      } else {
-                                          stack = new StackPanel(getSelectedComponent());
-                                      }
-                                      stack.addChild(panelBase);
-                                      nodo.setUserObject(stack);
-                                      break;
-                                  case "TabsPanel":
-                                      TabsPanel tabs;
-                                      if (getSelectedComponent() instanceof TabsPanel) {
-                                          tabs = (TabsPanel) getSelectedComponent();
-                                      } else {
-                                          tabs = new TabsPanel(getSelectedComponent());
-                                      }
-                                      tabs.addChild(panelBase);
-                                      nodo.setUserObject(tabs);
-                                      break;
-                              }
-                          }
-                      });
+        Messenger.addWeakListener("Eliminar", eliminar);
+        Messenger.addWeakListener("Insertar", insertar);
     }
 
     /**
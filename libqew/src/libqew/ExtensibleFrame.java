@@ -24,12 +24,25 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.JButton;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 /**
  * Ventana que envuelve con botones de aceptar y cancelar cualquier tipo de GUI
@@ -42,9 +55,27 @@ import javax.swing.JPanel;
  */
 public class ExtensibleFrame extends Frame implements Extensible {
 
+    private static final long ASSEMBLY_SLICE = 15; // Milisegundos que puede ocupar cada tanda de montaje en el hilo de eventos
+
+    private static final int POOL_SIZE = 4; // Ventanas libres que se guardan como mucho por cada tipo de contenido
+
+    private static final Map<Class<?>, Deque<ExtensibleFrame>> POOL = new HashMap<>(); // Ventanas libres según el tipo de contenido
+
+    private static final Executor DIRECT = new Executor() { // Ejecuta en el propio hilo las preparaciones que no hacen nada
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
     private ExtensiblePanel content;
     private JPanel buttonsPanel;
+    private JButton okButton;
+    private JButton cancelButton;
     private WindowCloseListener listener;
+    private Executor validationExecutor = ForkJoinPool.commonPool();
+    private Class<?> poolKey; // Tipo de contenido con el que se reutiliza, o null si no pertenece al pool
+    private Assembler assembler; // Montaje en curso iniciado por showWindowAsync, o null si no hay ninguno
 
     /**
      * Crea una ventana vacía que solo contendrá los botones. Se puede añadir
@@ -68,12 +99,7 @@ public class ExtensibleFrame extends Frame implements Extensible {
     public ExtensibleFrame(Component content) {
         super();
         initComponents();
-        if (content instanceof ExtensiblePanel) {
-            setContent((ExtensiblePanel) content);
-        } else {
-            StackPanel panel = new StackPanel((Component) content);
-            setContent(panel);
-        }
+        wrapContent(content);
     }
 
     /**
@@ -112,6 +138,8 @@ public class ExtensibleFrame extends Frame implements Extensible {
             }
         });
         buttons.add(cancel);
+        okButton = ok;
+        cancelButton = cancel;
         buttonsPanel = new JPanel();
         buttonsPanel.add(buttons);
         setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE); // La aplicación no debe cerrarse cuando se cierre un diálogo
@@ -121,20 +149,121 @@ public class ExtensibleFrame extends Frame implements Extensible {
             public void windowClosing(WindowEvent e) {
                 cancel(); // Se llama al cerrar y no al pulsar el botón para que se limpie también cuando se cierre sin pulsar el botón
             }
+
+            @Override
+            public void windowClosed(WindowEvent e) {
+                release(); // Si pertenece al pool vuelve a él para reutilizarse
+            }
         });
     }
 
+    /**
+     * Establece el componente como contenido, envolviéndolo antes con un
+     * <code>StackPanel</code> si no es una GUI extensible.
+     */
+    private void wrapContent(Component content) {
+        if (content instanceof ExtensiblePanel) {
+            setContent((ExtensiblePanel) content);
+        } else {
+            StackPanel panel = new StackPanel((Component) content);
+            setContent(panel);
+        }
+    }
+
+    /**
+     * Prepara el panel que contendrá la GUI y los botones, si no lo estaba ya.
+     */
+    private void initContentPane() {
+        if (buttonsPanel.getParent() != getContentPane()) {
+            setContentPane(new JPanel(new BorderLayout()));
+            getContentPane().add(buttonsPanel, BorderLayout.SOUTH);
+        }
+    }
+
+    /**
+     * Devuelve al pool una ventana que se ha cerrado, quitándole el contenido
+     * y todo lo que se le estableció junto a él.
+     */
+    private void release() {
+        if (poolKey == null || content == null) { // No pertenece al pool o ya se devolvió
+            return;
+        }
+        content = null;
+        setContentPane(new JPanel(new BorderLayout())); // Se descarta el contenido y con él lo que se calculó en el último pack
+        getContentPane().add(buttonsPanel, BorderLayout.SOUTH);
+        resetGeometry(); // Se abrirá como una ventana nueva y no con el tamaño y la posición anteriores
+        listener = null;
+        setTitle("");
+        setIconImages(null);
+        okButton.setEnabled(true);
+        cancelButton.setEnabled(true);
+        synchronized (POOL) {
+            addToPool(this);
+        }
+    }
+
+    /**
+     * Guarda la ventana en el pool de su tipo si no está lleno y si no la
+     * destruye. Se debe llamar con el pool bloqueado.
+     */
+    private static void addToPool(ExtensibleFrame frame) {
+        Deque<ExtensibleFrame> pool = POOL.get(frame.poolKey);
+        if (pool == null) {
+            pool = new ArrayDeque<>();
+            POOL.put(frame.poolKey, pool);
+        }
+        if (pool.size() < POOL_SIZE) {
+            pool.push(frame);
+        } else {
+            frame.poolKey = null; // Ya no pertenece al pool
+            frame.dispose();
+        }
+    }
+
     private void ok() {
         // Primero se valida el propio componente
         if (this instanceof WindowCloseListener && !((WindowCloseListener) this).validateThis()) {
             return; // Si se valida a falso no hace falta seguir
         }
-        if (getContent().validateAll() && (listener == null || listener.validateThis())) {
-            if (this instanceof WindowCloseListener) {
+        CompletableFuture<Boolean> validation = getContent().validateAllAsync(validationExecutor);
+        if (validation.isDone()) { // Si no había validaciones asíncronas se continúa directamente
+            ok(validation.join());
+            return;
+        }
+        // Si no, se desactivan los botones hasta que terminen y se continúa en el hilo de eventos
+        okButton.setEnabled(false);
+        cancelButton.setEnabled(false);
+        validation.whenComplete(new BiConsumer<Boolean, Throwable>() {
+            @Override
+            public void accept(Boolean valid, Throwable ex) {
+                if (ex != null) {
+                    Logger.getLogger(ExtensibleFrame.class.getName()).log(Level.SEVERE, null, ex);
+                }
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        okButton.setEnabled(true);
+                        cancelButton.setEnabled(true);
+                        if (isDisplayable()) { // Si se cerró la ventana mientras tanto ya no se guarda
+                            ok(ex == null && valid);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Termina el proceso de aceptar una vez validado el contenido.
+     */
+    private void ok(boolean valid) {
+        if (valid && (listener == null || listener.validateThis())) {
+            boolean modified = isModified(); // Se consulta antes de que saveAll limpie las marcas
+            if (modified && this instanceof WindowCloseListener) {
                 ((WindowCloseListener) this).saveThis();
             }
-            getContent().saveAll();
-            if (listener != null) {
+            getContent().saveAll(); // Omite por sí mismo los paneles sin cambios
+            if (modified && listener != null) {
                 listener.saveThis();
             }
             ExtensibleFrame.this.dispatchEvent(new WindowEvent(ExtensibleFrame.this, WindowEvent.WINDOW_CLOSING)); // Antes de cerrarse se llamará a cancel y ahí se limpiará
@@ -142,6 +271,10 @@ public class ExtensibleFrame extends Frame implements Extensible {
     }
 
     private void cancel() {
+        if (assembler != null) { // Se interrumpe el montaje para que no se construya nada más
+            assembler.abort();
+            assembler = null;
+        }
         if (this instanceof WindowCloseListener) {
             ((WindowCloseListener) this).cleanThis();
         }
@@ -155,7 +288,7 @@ public class ExtensibleFrame extends Frame implements Extensible {
     protected void addImpl(Component comp, Object constraints, int index) {
         if (content != null) { // Si tiene una GUI extensible interna se añade a ella
             content.add(comp, constraints, index);
-            pack();
+            repack();
         } else { // Si no, se añade normal
             super.addImpl(comp, constraints, index);
         }
@@ -164,13 +297,13 @@ public class ExtensibleFrame extends Frame implements Extensible {
     @Override
     public void addChild(Component child) {
         getContent().addChild(child);
-        pack();
+        repack();
     }
 
     @Override
     public void addChildrenList(Collection<Component> list) {
         getContent().addChildrenList(list);
-        pack();
+        repack();
     }
 
     /**
@@ -181,21 +314,36 @@ public class ExtensibleFrame extends Frame implements Extensible {
      */
     public void setContent(ExtensiblePanel content) {
         if (content != null) {
+            if (this.content != null) {
+                getContentPane().remove(this.content);
+            }
+            initContentPane(); // Si ya tenía el panel con los botones solo se cambia la GUI
             this.content = content;
-            setContentPane(new JPanel(new BorderLayout()));
             if (content instanceof TreeNodePanel) { // Si es un TreeNodePanel se envuelve en vista de árbol para visualizarlo
                 this.content = new TreeViewPanel();
+                this.content.setTrackChanges(content.isTrackChanges()); // El envoltorio no debe contar siempre como modificado
                 this.content.addChild(content);
             }
             getContentPane().add(this.content, BorderLayout.CENTER);
-            getContentPane().add(buttonsPanel, BorderLayout.SOUTH);
             if (getTitle().equals("")) { // Si no se le ha puesto título a la ventana hereda el de la GUI
                 setTitle(this.content.getName());
             }
-            pack();
+            repack();
         }
     }
 
+    /**
+     * Indica si el contenido de la ventana se ha modificado desde el último
+     * guardado. Si el contenido no sigue los cambios siempre se considera
+     * modificado.
+     *
+     * @return si hay cambios pendientes de guardar
+     * @see ExtensiblePanel#setTrackChanges(boolean)
+     */
+    public boolean isModified() {
+        return getContent().isDirty();
+    }
+
     /**
      * Obtiene la GUI extensible envuelta por esta ventana. Si no se ha
      * establecido se crea una de tipo en una sola página.
@@ -229,6 +377,27 @@ public class ExtensibleFrame extends Frame implements Extensible {
         this.listener = listener;
     }
 
+    /**
+     * Obtiene el ejecutor en el que se lanzan las validaciones de los
+     * {@link AsyncWindowCloseListener} al pulsar el botón de aceptar.
+     *
+     * @return el ejecutor
+     */
+    public Executor getValidationExecutor() {
+        return validationExecutor;
+    }
+
+    /**
+     * Establece el ejecutor en el que se lanzarán las validaciones de los
+     * {@link AsyncWindowCloseListener} al pulsar el botón de aceptar. Por
+     * defecto se usa {@link ForkJoinPool#commonPool()}.
+     *
+     * @param executor el ejecutor
+     */
+    public void setValidationExecutor(Executor executor) {
+        this.validationExecutor = executor;
+    }
+
     /**
      * Crea y muestra una ventana envolviendo al componente.
      *
@@ -279,6 +448,291 @@ public class ExtensibleFrame extends Frame implements Extensible {
         return frame;
     }
 
+    /**
+     * Muestra inmediatamente una ventana vacía y construye después su
+     * contenido.
+     *
+     * @param content la función que construye el componente a envolver
+     * @param icons la lista de iconos a ser usada como iconos de la ventana
+     * @return la ventana mostrada
+     * @see #showWindowAsync(Supplier, Iterable, List)
+     */
+    public static ExtensibleFrame showWindowAsync(Supplier<? extends Component> content, List<Image> icons) {
+        return showWindowAsync(content, null, icons);
+    }
+
+    /**
+     * Muestra inmediatamente una ventana con un aviso de carga y construye
+     * después su contenido y sus hijos, de forma que el tiempo hasta que
+     * aparece la ventana no depende del tamaño de la jerarquía.
+     * <p>
+     * Las funciones se ejecutan en el hilo de eventos, así que los datos que
+     * necesiten deben estar ya preparados. Si hay que leerlos o calcularlos
+     * conviene usar {@link #showWindowAsync(AsyncContent, Iterable, List, Executor)}.
+     *
+     * @param content la función que construye el componente a envolver
+     * @param children las funciones que construyen cada hijo, o
+     * <code>null</code> si no tiene
+     * @param icons la lista de iconos a ser usada como iconos de la ventana
+     * @return la ventana mostrada
+     */
+    public static ExtensibleFrame showWindowAsync(Supplier<? extends Component> content,
+                                                  Iterable<? extends Supplier<? extends Component>> children,
+                                                  List<Image> icons) {
+        List<AsyncContent> parts = new ArrayList<>();
+        if (children != null) {
+            for (Supplier<? extends Component> child : children) {
+                parts.add(new PreparedContent(child));
+            }
+        }
+        return showWindowAsync(new PreparedContent(content), parts, icons, DIRECT);
+    }
+
+    /**
+     * Muestra inmediatamente una ventana con un aviso de carga y construye
+     * después su contenido y sus hijos sin bloquear el hilo de eventos.
+     * <p>
+     * La preparación de los datos de cada parte se lanza a la vez en el
+     * ejecutor. Cuando termina la de una parte, y las anteriores ya están
+     * montadas, sus componentes se construyen en el hilo de eventos en tandas
+     * cortas, para que la ventana siga respondiendo mientras tanto. Los hijos
+     * se añaden al contenido (o a la ventana si no es {@link Extensible}) en
+     * el mismo orden en que se pasan. Si falla la preparación de un hijo se
+     * omite, y si falla la del contenido se cierra la ventana.
+     * <p>
+     * El botón de aceptar permanece desactivado hasta que termina el montaje,
+     * así que no se validará ni guardará nada incompleto. Si se cancela o se
+     * cierra la ventana antes, se limpia lo ya montado, se descartan las
+     * preparaciones pendientes y no se construye el resto.
+     *
+     * @param content la parte que forma el componente a envolver
+     * @param children las partes que forman cada hijo, o <code>null</code> si
+     * no tiene
+     * @param icons la lista de iconos a ser usada como iconos de la ventana
+     * @param executor el ejecutor en el que se preparan los datos
+     * @return la ventana mostrada
+     */
+    public static ExtensibleFrame showWindowAsync(AsyncContent content, Iterable<? extends AsyncContent> children,
+                                                  List<Image> icons, Executor executor) {
+        ExtensibleFrame frame = new ExtensibleFrame(new JLabel("Loading..."));
+        frame.setIconImages(icons);
+        frame.okButton.setEnabled(false);
+        frame.setVisible(true);
+        frame.assembler = frame.new Assembler(content, children, executor);
+        return frame;
+    }
+
+    /**
+     * Obtiene una ventana envolviendo al componente, reutilizando si es posible
+     * una de las que se cerraron con un contenido del mismo tipo.
+     * <p>
+     * Al cerrarse, la ventana no se destruye sino que se le quita el
+     * contenido, el {@link WindowCloseListener}, el título, los iconos, el
+     * tamaño y la posición y vuelve al pool, listo para envolver otro contenido
+     * sin reconstruir los botones ni los listeners. Si el pool de ese tipo ya
+     * está lleno se destruye.
+     *
+     * @param content el componente a envolver
+     * @return la ventana, sin mostrar
+     * @see #prewarm(Class, int)
+     */
+    public static ExtensibleFrame obtainWindow(Component content) {
+        ExtensibleFrame frame;
+        synchronized (POOL) {
+            Deque<ExtensibleFrame> pool = POOL.get(content.getClass());
+            frame = pool == null ? null : pool.poll();
+        }
+        if (frame == null) {
+            frame = new ExtensibleFrame();
+            frame.poolKey = content.getClass();
+        }
+        frame.wrapContent(content);
+        frame.setTitle(content.getName());
+        return frame;
+    }
+
+    /**
+     * Obtiene del pool y muestra una ventana envolviendo al componente.
+     *
+     * @param content el componente a envolver
+     * @param icons la lista de iconos a ser usada como iconos de la ventana
+     * @return la ventana mostrada
+     * @see #obtainWindow(Component)
+     */
+    public static ExtensibleFrame showPooledWindow(Component content, List<Image> icons) {
+        ExtensibleFrame frame = obtainWindow(content);
+        frame.setIconImages(icons);
+        frame.setVisible(true);
+        return frame;
+    }
+
+    /**
+     * Crea por adelantado ventanas para envolver contenidos del tipo indicado,
+     * de forma que las próximas llamadas a {@link #obtainWindow} solo tengan
+     * que colocar el contenido. Conviene llamarlo cuando la aplicación esté
+     * inactiva, por ejemplo desde <code>SwingUtilities.invokeLater</code> tras
+     * mostrar la ventana principal.
+     * <p>
+     * Como mucho se guardan cuatro ventanas libres por tipo, y las que se
+     * devuelvan al pool estando lleno se destruyen. Debe llamarse desde el
+     * hilo de eventos, como cualquier creación de componentes.
+     *
+     * @param type el tipo de los contenidos que envolverán
+     * @param count el número de ventanas libres que debe haber para ese tipo
+     */
+    public static void prewarm(Class<? extends Component> type, int count) {
+        synchronized (POOL) { // Se comprueba y se rellena a la vez para que dos llamadas no creen el doble
+            Deque<ExtensibleFrame> pool = POOL.get(type);
+            int missing = Math.min(count, POOL_SIZE) - (pool == null ? 0 : pool.size());
+            for (int i = 0; i < missing; i++) {
+                ExtensibleFrame frame = new ExtensibleFrame();
+                frame.poolKey = type;
+                frame.initContentPane();
+                addToPool(frame);
+            }
+        }
+    }
+
+    /**
+     * Parte de una ventana abierta con
+     * {@link #showWindowAsync(AsyncContent, Iterable, List, Executor)}, que
+     * separa la preparación de sus datos de la construcción de sus
+     * componentes.
+     *
+     * @author Alejandro Hernández Ferrero
+     */
+    public interface AsyncContent {
+
+        /**
+         * Prepara fuera del hilo de eventos los datos que necesita la parte
+         * (leerlos, copiarlos, crear los modelos...) y devuelve la función que
+         * construirá con ellos el componente. Esa función se ejecutará en el
+         * hilo de eventos, así que no debe hacer más que crear componentes.
+         *
+         * @return la función que construye el componente
+         */
+        Supplier<? extends Component> prepare();
+    }
+
+    /**
+     * Parte que no tiene datos que preparar y solo construye el componente.
+     */
+    private static class PreparedContent implements AsyncContent {
+
+        private final Supplier<? extends Component> builder;
+
+        public PreparedContent(Supplier<? extends Component> builder) {
+            this.builder = builder;
+        }
+
+        @Override
+        public Supplier<? extends Component> prepare() {
+            return builder;
+        }
+    }
+
+    /**
+     * Monta el contenido de una ventana abierta con
+     * {@link #showWindowAsync(AsyncContent, Iterable, List, Executor)}: lanza
+     * la preparación de todas las partes en el ejecutor y construye cada una
+     * en el hilo de eventos según están listas, en tandas que no lo bloquean
+     * más de {@link #ASSEMBLY_SLICE} milisegundos.
+     */
+    private class Assembler implements Runnable {
+
+        private final List<CompletableFuture<Supplier<? extends Component>>> parts = new ArrayList<>(); // La primera es el contenido
+        private int next; // Índice de la siguiente parte a construir
+        private Extensible parent;
+        private boolean aborted;
+
+        public Assembler(AsyncContent content, Iterable<? extends AsyncContent> children, Executor executor) {
+            parts.add(prepare(content, executor));
+            if (children != null) {
+                for (AsyncContent child : children) {
+                    parts.add(prepare(child, executor));
+                }
+            }
+            resume(parts.get(0));
+        }
+
+        private CompletableFuture<Supplier<? extends Component>> prepare(final AsyncContent part, Executor executor) {
+            return CompletableFuture.supplyAsync(new Supplier<Supplier<? extends Component>>() {
+                @Override
+                public Supplier<? extends Component> get() {
+                    return part.prepare();
+                }
+            }, executor);
+        }
+
+        /**
+         * Continúa el montaje en el hilo de eventos cuando termine la
+         * preparación de la parte.
+         */
+        private void resume(CompletableFuture<Supplier<? extends Component>> part) {
+            part.whenComplete(new BiConsumer<Object, Throwable>() {
+                @Override
+                public void accept(Object builder, Throwable ex) {
+                    SwingUtilities.invokeLater(Assembler.this);
+                }
+            });
+        }
+
+        /**
+         * Interrumpe el montaje y descarta las preparaciones que no hayan
+         * empezado.
+         */
+        public void abort() {
+            aborted = true;
+            for (CompletableFuture<Supplier<? extends Component>> part : parts) {
+                part.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (aborted || !isDisplayable()) { // Se cerró durante el montaje: lo montado ya se limpió al cerrar
+                return;
+            }
+            long end = System.currentTimeMillis() + ASSEMBLY_SLICE;
+            while (next < parts.size()) {
+                CompletableFuture<Supplier<? extends Component>> part = parts.get(next);
+                if (!part.isDone()) { // Sus datos aún se están preparando: se sigue cuando estén listos
+                    repack();
+                    resume(part);
+                    return;
+                }
+                if (System.currentTimeMillis() >= end) { // Se cede el hilo de eventos y se sigue en la siguiente tanda
+                    repack();
+                    SwingUtilities.invokeLater(this);
+                    return;
+                }
+                next++;
+                Supplier<? extends Component> builder;
+                try {
+                    builder = part.join();
+                } catch (CompletionException ex) {
+                    Logger.getLogger(ExtensibleFrame.class.getName()).log(Level.SEVERE, null, ex.getCause());
+                    if (parent == null) { // Sin contenido no hay nada que mostrar
+                        dispatchEvent(new WindowEvent(ExtensibleFrame.this, WindowEvent.WINDOW_CLOSING));
+                        return;
+                    }
+                    continue;
+                }
+                Component comp = builder.get();
+                if (parent == null) { // Primera parte: se sustituye el aviso de carga por el contenido
+                    setTitle(comp.getName());
+                    wrapContent(comp);
+                    parent = comp instanceof Extensible ? (Extensible) comp : ExtensibleFrame.this;
+                } else {
+                    parent.addChild(comp);
+                }
+            }
+            repack();
+            assembler = null;
+            okButton.setEnabled(true); // Ya se puede validar y guardar
+        }
+    }
+
     /**
      * Encapsula el código personalizado que se ejecutará cuando se produzcan
      * los eventos de validar, guardar y limpiar al cerrar la ventana.
@@ -315,4 +769,47 @@ public class ExtensibleFrame extends Frame implements Extensible {
 
     }
 
+    /**
+     * Variante de {@link WindowCloseListener} cuya validación se realiza de
+     * forma asíncrona, adecuada para validaciones costosas como comprobar
+     * ficheros o datos relacionados entre sí, que de otra forma bloquearían
+     * la GUI.
+     * <p>
+     * Al pulsar el botón de aceptar se lanzan a la vez todas las validaciones
+     * asíncronas de la jerarquía y se desactivan los botones de la ventana
+     * hasta que terminen todas, tras lo que se sigue con el proceso normal.
+     *
+     * @author Alejandro Hernández Ferrero
+     */
+    public interface AsyncWindowCloseListener extends WindowCloseListener {
+
+        /**
+         * Valida los datos de esta clase de forma asíncrona. Si no son válidos
+         * no se seguirá con el proceso de guardar.
+         *
+         * @param executor el ejecutor en el que se deben lanzar las tareas de
+         * validación
+         * @return el resultado de la validación, <code>true</code> si los datos
+         * son válidos
+         */
+        public CompletableFuture<Boolean> validateAsync(Executor executor);
+
+        /**
+         * Valida los datos de esta clase esperando al resultado de
+         * {@link #validateAsync} ejecutado en el hilo actual.
+         *
+         * @return <code>true</code> si los datos son válidos
+         */
+        @Override
+        public default boolean validateThis() {
+            return validateAsync(new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    command.run();
+                }
+            }).join();
+        }
+
+    }
+
 }
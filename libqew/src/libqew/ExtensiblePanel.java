@@ -19,10 +19,34 @@ package libqew;
 import java.awt.Component;
 import java.awt.Container;
 import java.awt.LayoutManager;
+import java.awt.event.ContainerEvent;
+import java.awt.event.ContainerListener;
+import java.awt.event.ItemEvent;
+import java.awt.event.ItemListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import javax.swing.AbstractButton;
+import javax.swing.JComboBox;
 import javax.swing.JPanel;
+import javax.swing.JSlider;
+import javax.swing.JSpinner;
+import javax.swing.JTable;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.TableModel;
+import javax.swing.text.JTextComponent;
+import libqew.ExtensibleFrame.AsyncWindowCloseListener;
 import libqew.ExtensibleFrame.WindowCloseListener;
 
 /**
@@ -38,19 +62,49 @@ import libqew.ExtensibleFrame.WindowCloseListener;
  * Se puede utilizar cualquiera de las dos formas o incluso las dos juntas
  * teniendo en cuenta que siempre se ejecutará antes el código insertado por el
  * segundo método.
- *
+ * <p>
+ * Los componentes a los que se propagan los eventos se calculan la primera vez
+ * que se necesitan y se guardan hasta que cambie la jerarquía, de lo que se
+ * tiene constancia mediante {@link ContainerListener}. Las subclases que no
+ * guarden a sus hijos como componentes de Swing deben avisar de los cambios
+ * mediante {@link #invalidateListeners}.
+ * <p>
+ * Opcionalmente puede llevar la cuenta de si se han modificado los datos
+ * mediante {@link #setTrackChanges}, de forma que {@link #saveAll} no llame a
+ * las GUIs que no hayan cambiado. Se detectan automáticamente los cambios en
+ * los componentes de entrada de datos habituales de Swing y se puede indicar
+ * cualquier otro cambio mediante {@link #markDirty}.
  *
  * @author Alejandro Hernández Ferrero
  */
 public abstract class ExtensiblePanel extends JPanel implements Extensible {
 
     private WindowCloseListener listener;
+    private Object[] targets; // GUIs extensibles y listeners a los que se propagan los eventos
+    private final ArrayList<Container> watched = new ArrayList<>(); // Contenedores de los que depende targets
+    private final ArrayList<Component> tracked = new ArrayList<>(); // Componentes cuyos cambios se detectan
+    private boolean trackChanges;
+    private boolean dirty;
+    private final ChangeTracker changeTracker = new ChangeTracker();
+    private final ContainerListener hierarchyListener = new ContainerListener() { // Invalida targets si cambia la jerarquía
+        @Override
+        public void componentAdded(ContainerEvent e) {
+            invalidateListeners();
+        }
+
+        @Override
+        public void componentRemoved(ContainerEvent e) {
+            invalidateListeners();
+        }
+    };
 
     public ExtensiblePanel(LayoutManager layout) {
         super(layout);
+        addContainerListener(hierarchyListener);
     }
 
     public ExtensiblePanel() {
+        addContainerListener(hierarchyListener);
     }
 
     /**
@@ -74,30 +128,80 @@ public abstract class ExtensiblePanel extends JPanel implements Extensible {
         if (listener != null && !listener.validateThis()) { // Después se valida el código insertado
             valid = false;
         }
-        Queue<Component> queue = new ArrayDeque(); // Se usa una cola para recorrer la jerarquía en anchura
-        for (Component comp : getComponents()) {
-            queue.offer(comp);
-        }
-        while (!queue.isEmpty()) {
-            Component component = queue.poll();
-            if (component instanceof ExtensiblePanel) { // Si es una GUI extensible se delega en su propio método de propagación
-                if (!((ExtensiblePanel) component).validateAll()) {
+        for (Object target : getTargets()) {
+            if (target instanceof ExtensiblePanel) { // Si es una GUI extensible se delega en su propio método de propagación
+                if (!((ExtensiblePanel) target).validateAll()) {
                     valid = false;
                 }
-            } else { // Si solo se desea que se propague por GUIs extensibles y directamente conectadas, se debe eliminar este else
-                if (component instanceof WindowCloseListener) { // Si es un componente normal pero implementa la interfaz se valida
-                    if (!((WindowCloseListener) component).validateThis()) {
-                        valid = false;
-                    }
-                }
-                if (component instanceof Container) { // Si es un contenedor se exploran sus hijos
-                    for (Component comp : ((Container) component).getComponents()) {
-                        queue.offer(comp);
+            } else if (!((WindowCloseListener) target).validateThis()) { // Si es un componente normal que implementa la interfaz se valida
+                valid = false;
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Propaga los eventos de validar por la jerarquía de componentes de forma
+     * asíncrona.
+     * <p>
+     * Los {@link AsyncWindowCloseListener} de la jerarquía se lanzan todos a la
+     * vez en el ejecutor, por lo que los de GUIs independientes se validan de
+     * forma concurrente, mientras que el resto de {@link WindowCloseListener}
+     * se validan directamente en el hilo que llama a este método.
+     *
+     * @param executor el ejecutor en el que se lanzarán las validaciones
+     * asíncronas
+     * @return el resultado de la validación, que será <code>true</code> si
+     * todos los {@link WindowCloseListener} de la jerarquía validan a
+     * <code>true</code>
+     */
+    public final CompletableFuture<Boolean> validateAllAsync(Executor executor) {
+        ArrayList<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        boolean valid = true;
+        if (!startValidation(this, executor, futures)) {
+            valid = false;
+        }
+        if (listener != null && !startValidation(listener, executor, futures)) {
+            valid = false;
+        }
+        for (Object target : getTargets()) {
+            if (target instanceof ExtensiblePanel) {
+                futures.add(((ExtensiblePanel) target).validateAllAsync(executor));
+            } else if (!startValidation(target, executor, futures)) {
+                valid = false;
+            }
+        }
+        if (futures.isEmpty()) { // Todo se ha validado ya de forma síncrona
+            return CompletableFuture.completedFuture(valid);
+        }
+        boolean validSync = valid;
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(new Function<Void, Boolean>() {
+            @Override
+            public Boolean apply(Void v) {
+                boolean result = validSync;
+                for (CompletableFuture<Boolean> future : futures) {
+                    if (!future.join()) {
+                        result = false;
                     }
                 }
+                return result;
             }
+        });
+    }
+
+    /**
+     * Valida el objeto si es un {@link WindowCloseListener}. Si es asíncrono
+     * se lanza y se añade su resultado a la lista, y si no se valida
+     * directamente.
+     *
+     * @return <code>false</code> si se validó directamente a falso
+     */
+    private static boolean startValidation(Object object, Executor executor, Collection<CompletableFuture<Boolean>> futures) {
+        if (object instanceof AsyncWindowCloseListener) {
+            futures.add(((AsyncWindowCloseListener) object).validateAsync(executor));
+            return true;
         }
-        return valid;
+        return !(object instanceof WindowCloseListener) || ((WindowCloseListener) object).validateThis();
     }
 
     /**
@@ -109,31 +213,23 @@ public abstract class ExtensiblePanel extends JPanel implements Extensible {
      * conectados.
      */
     public final void saveAll() {
+        if (!isDirty()) { // Si no ha cambiado nada en esta rama no hace falta guardarla
+            return;
+        }
         if (this instanceof WindowCloseListener) {
             ((WindowCloseListener) this).saveThis();
         }
         if (listener != null) {
             listener.saveThis();
         }
-        Queue<Component> queue = new ArrayDeque();
-        for (Component comp : getComponents()) {
-            queue.offer(comp);
-        }
-        while (!queue.isEmpty()) {
-            Component component = queue.poll();
-            if (component instanceof ExtensiblePanel) {
-                ((ExtensiblePanel) component).saveAll();
+        for (Object target : getTargets()) {
+            if (target instanceof ExtensiblePanel) {
+                ((ExtensiblePanel) target).saveAll();
             } else {
-                if (component instanceof WindowCloseListener) {
-                    ((WindowCloseListener) component).saveThis();
-                }
-                if (component instanceof Container) {
-                    for (Component comp : ((Container) component).getComponents()) {
-                        queue.offer(comp);
-                    }
-                }
+                ((WindowCloseListener) target).saveThis();
             }
         }
+        dirty = false;
     }
 
     /**
@@ -151,25 +247,147 @@ public abstract class ExtensiblePanel extends JPanel implements Extensible {
         if (listener != null) {
             listener.cleanThis();
         }
-        Queue<Component> queue = new ArrayDeque();
+        for (Object target : getTargets()) {
+            if (target instanceof ExtensiblePanel) {
+                ((ExtensiblePanel) target).cleanAll();
+            } else {
+                ((WindowCloseListener) target).cleanThis();
+            }
+        }
+        dirty = false;
+    }
+
+    /**
+     * Establece si se llevará la cuenta de si se han modificado los datos de
+     * esta GUI, lo que se aplicará también a todas sus GUIs extensibles hijas.
+     * <p>
+     * Si está activado, {@link #saveAll} solo propagará el evento de guardar a
+     * las ramas de la jerarquía en las que se haya producido algún cambio. Por
+     * defecto está desactivado y se considera que siempre hay cambios, ya que
+     * no se pueden detectar los cambios en componentes personalizados a menos
+     * que avisen mediante {@link #markDirty}.
+     *
+     * @param trackChanges si se llevará la cuenta de los cambios
+     */
+    public void setTrackChanges(boolean trackChanges) {
+        if (this.trackChanges == trackChanges) {
+            return;
+        }
+        this.trackChanges = trackChanges;
+        dirty = false;
+        invalidateListeners(); // Se recorre de nuevo la jerarquía para añadir o quitar los listeners de cambios
+        for (Object target : getTargets()) { // Se aplica igual a las GUIs extensibles hijas en ambos sentidos
+            if (target instanceof ExtensiblePanel) {
+                ((ExtensiblePanel) target).setTrackChanges(trackChanges);
+            }
+        }
+    }
+
+    /**
+     * Indica si se lleva la cuenta de si se han modificado los datos de esta
+     * GUI.
+     *
+     * @return <code>true</code> si se lleva la cuenta
+     */
+    public boolean isTrackChanges() {
+        return trackChanges;
+    }
+
+    /**
+     * Marca esta GUI como modificada, de forma que se propague a ella el
+     * próximo evento de guardar.
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    /**
+     * Indica si se han modificado los datos de esta GUI o de alguna de sus GUIs
+     * extensibles hijas desde la última vez que se guardó o limpió.
+     *
+     * @return <code>true</code> si ha habido cambios o no se lleva la cuenta de
+     * ellos
+     */
+    public boolean isDirty() {
+        if (!trackChanges || dirty) {
+            return true;
+        }
+        for (Object target : getTargets()) {
+            if (target instanceof ExtensiblePanel && ((ExtensiblePanel) target).isDirty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Descarta los componentes a los que se propagan los eventos para que se
+     * vuelvan a calcular la próxima vez que se necesiten.
+     * <p>
+     * Se llama automáticamente cuando se añaden o eliminan componentes en la
+     * jerarquía de Swing. Las subclases que sobreescriban
+     * {@link #getComponents()} deben llamarlo cuando cambie su resultado. Si
+     * se lleva la cuenta de los cambios se vuelven a calcular en el momento,
+     * para detectar desde ya los cambios en los componentes nuevos.
+     */
+    protected void invalidateListeners() {
+        if (targets == null) {
+            return;
+        }
+        targets = null;
+        for (Container container : watched) { // Se recalcularán al recorrer de nuevo la jerarquía
+            container.removeContainerListener(hierarchyListener);
+        }
+        watched.clear();
+        for (Component comp : tracked) {
+            changeTracker.untrack(comp);
+        }
+        tracked.clear();
+        if (trackChanges) { // Los cambios deben detectarse antes de que se produzcan así que no se espera a necesitarlos
+            getTargets();
+        }
+    }
+
+    /**
+     * Obtiene las GUIs extensibles hijas y los componentes que implementan
+     * {@link WindowCloseListener} de la jerarquía, recorriéndola en anchura
+     * solo si ha cambiado desde la última vez.
+     */
+    private Object[] getTargets() {
+        if (targets != null) {
+            return targets;
+        }
+        ArrayList<Object> list = new ArrayList<>();
+        Queue<Component> queue = new ArrayDeque<>(); // Se usa una cola para recorrer la jerarquía en anchura
         for (Component comp : getComponents()) {
             queue.offer(comp);
         }
         while (!queue.isEmpty()) {
             Component component = queue.poll();
-            if (component instanceof ExtensiblePanel) {
-                ((ExtensiblePanel) component).cleanAll();
-            } else {
+            if (component instanceof ExtensiblePanel) { // Si es una GUI extensible ella misma mantiene sus propios componentes
+                list.add(component);
+                if (trackChanges) {
+                    ((ExtensiblePanel) component).setTrackChanges(true);
+                }
+            } else { // Si solo se desea que se propague por GUIs extensibles y directamente conectadas, se debe eliminar este else
                 if (component instanceof WindowCloseListener) {
-                    ((WindowCloseListener) component).cleanThis();
+                    list.add(component);
+                }
+                if (trackChanges && changeTracker.track(component)) {
+                    tracked.add(component);
                 }
-                if (component instanceof Container) {
-                    for (Component comp : ((Container) component).getComponents()) {
+                if (component instanceof Container) { // Si es un contenedor se exploran sus hijos y se observan sus cambios
+                    Container container = (Container) component;
+                    container.addContainerListener(hierarchyListener);
+                    watched.add(container);
+                    for (Component comp : container.getComponents()) {
                         queue.offer(comp);
                     }
                 }
             }
         }
+        targets = list.toArray();
+        return targets;
     }
 
     /**
@@ -203,4 +421,95 @@ public abstract class ExtensiblePanel extends JPanel implements Extensible {
         }
     }
 
+    /**
+     * Marca la GUI como modificada cuando cambia alguno de los componentes de
+     * entrada de datos habituales de Swing.
+     */
+    private class ChangeTracker implements DocumentListener, ItemListener, ChangeListener, TableModelListener, PropertyChangeListener {
+
+        /**
+         * Empieza a detectar los cambios del componente si es de un tipo
+         * conocido.
+         *
+         * @return <code>true</code> si se detectarán sus cambios
+         */
+        private boolean track(Component comp) {
+            if (comp instanceof JTextComponent) {
+                ((JTextComponent) comp).getDocument().addDocumentListener(this);
+            } else if (comp instanceof AbstractButton) {
+                ((AbstractButton) comp).addItemListener(this);
+            } else if (comp instanceof JComboBox) {
+                ((JComboBox) comp).addItemListener(this);
+            } else if (comp instanceof JSlider) {
+                ((JSlider) comp).addChangeListener(this);
+            } else if (comp instanceof JSpinner) {
+                ((JSpinner) comp).addChangeListener(this);
+            } else if (comp instanceof JTable) { // Se sigue al modelo aunque se sustituya
+                ((JTable) comp).getModel().addTableModelListener(this);
+                comp.addPropertyChangeListener("model", this);
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Deja de detectar los cambios del componente.
+         */
+        private void untrack(Component comp) {
+            if (comp instanceof JTextComponent) {
+                ((JTextComponent) comp).getDocument().removeDocumentListener(this);
+            } else if (comp instanceof AbstractButton) {
+                ((AbstractButton) comp).removeItemListener(this);
+            } else if (comp instanceof JComboBox) {
+                ((JComboBox) comp).removeItemListener(this);
+            } else if (comp instanceof JSlider) {
+                ((JSlider) comp).removeChangeListener(this);
+            } else if (comp instanceof JSpinner) {
+                ((JSpinner) comp).removeChangeListener(this);
+            } else if (comp instanceof JTable) {
+                ((JTable) comp).getModel().removeTableModelListener(this);
+                comp.removePropertyChangeListener("model", this);
+            }
+        }
+
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+            markDirty();
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+            markDirty();
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+            markDirty();
+        }
+
+        @Override
+        public void itemStateChanged(ItemEvent e) {
+            markDirty();
+        }
+
+        @Override
+        public void stateChanged(ChangeEvent e) {
+            markDirty();
+        }
+
+        @Override
+        public void tableChanged(TableModelEvent e) {
+            markDirty();
+        }
+
+        @Override
+        public void propertyChange(PropertyChangeEvent evt) { // Se ha sustituido el modelo de una tabla
+            ((TableModel) evt.getOldValue()).removeTableModelListener(this);
+            ((TableModel) evt.getNewValue()).addTableModelListener(this);
+            markDirty();
+        }
+
+    }
+
 }
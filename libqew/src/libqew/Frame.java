@@ -16,15 +16,28 @@
  */
 package libqew;
 
+import java.awt.Component;
 import java.awt.Container;
 import java.awt.Dimension;
-import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
 import java.awt.GraphicsEnvironment;
+import java.awt.Insets;
+import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.Toolkit;
+import java.awt.Window;
 import java.awt.event.WindowEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.JScrollPane;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import javax.swing.ViewportLayout;
 
 /**
  * Ventana que proporciona mayor soporte en cuanto al redimensionamiento. Se
@@ -37,8 +50,13 @@ import javax.swing.JScrollPane;
  */
 public class Frame extends JFrame {
 
+    private static final Map<GraphicsConfiguration, Rectangle> SCREENS = new HashMap<>(); // Espacio útil de cada pantalla
+
     private boolean pack;
+    private boolean packScheduled;
+    private Object[] packState; // Bordes, tamaños del contenido, pantalla y tamaño resultante del último pack
     private boolean hasScrollBars;
+    private JScrollPane scrollPane; // Una vez creado envuelve al contenido permanentemente
 
     private boolean addScrollBar = true;
     private boolean closeWindow = false;
@@ -50,6 +68,14 @@ public class Frame extends JFrame {
     public Frame() {
         super();
         setLocationByPlatform(true); // Para que el SO se encargue de la posición inicial
+        addPropertyChangeListener("graphicsConfiguration", new PropertyChangeListener() { // Cambio de pantalla o de su configuración
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                invalidateScreenBounds((GraphicsConfiguration) evt.getOldValue());
+                invalidateScreenBounds((GraphicsConfiguration) evt.getNewValue());
+                packState = null;
+            }
+        });
     }
 
     /**
@@ -62,25 +88,37 @@ public class Frame extends JFrame {
             pack = true;
             return;
         }
+        Insets insets = getInsets();
         Dimension border = new Dimension(); // Tamaño del borde de la ventana
-        border.setSize(getInsets().left + getInsets().right, getInsets().top + getInsets().bottom);
-        Rectangle screen = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds(); // Tamaño de la pantalla
+        border.setSize(insets.left + insets.right, insets.top + insets.bottom);
+        Rectangle screen = getScreenBounds(getGraphicsConfiguration()); // Tamaño de la pantalla
+        Container contentPane = getContentPane();
+        Dimension contentPref = contentPane.getPreferredSize();
+        Dimension contentMax = contentPane.getMaximumSize();
+        Dimension contentMin = contentPane.getMinimumSize();
+        Object[] state = {insets, screen, contentPref, contentMax, contentMin, getSize()}; // Si el usuario la ha redimensionado el tamaño no coincidirá
+        if (Arrays.equals(state, packState)) { // Si nada ha cambiado desde el último pack no hay que recalcular los tamaños
+            pack = false;
+            validate(); // Pero el contenido puede haber cambiado sin cambiar de tamaño
+            keepOnScreen(screen, getPreferredSize()); // Y puede haberse movido fuera de la pantalla
+            return;
+        }
         Dimension pref = new Dimension();
-        pref.setSize(getContentPane().getPreferredSize().getWidth() + border.getWidth(), getContentPane().getPreferredSize().getHeight() + border.getHeight());
+        pref.setSize(contentPref.getWidth() + border.getWidth(), contentPref.getHeight() + border.getHeight());
         pref.setSize(Math.min(pref.getWidth(), screen.getWidth()), Math.min(pref.getHeight(), screen.getHeight())); // El tamaño será como mucho el de la pantalla
         setPreferredSize(pref);
         Dimension max = new Dimension();
-        max.setSize(getContentPane().getMaximumSize().getWidth() + border.getWidth(), getContentPane().getMaximumSize().getHeight() + border.getHeight());
+        max.setSize(contentMax.getWidth() + border.getWidth(), contentMax.getHeight() + border.getHeight());
         max.setSize(Math.min(max.getWidth(), screen.getWidth()), Math.min(max.getHeight(), screen.getHeight())); // El tamaño será como mucho el de la pantalla
         setMaximumSize(max);
         Dimension min = new Dimension();
-        min.setSize(getContentPane().getMinimumSize().getWidth() + border.getWidth(), getContentPane().getMinimumSize().getHeight() + border.getHeight());
+        min.setSize(contentMin.getWidth() + border.getWidth(), contentMin.getHeight() + border.getHeight());
         boolean oversized = false;
         // Si el tamaño mínimo de la ventana es mayor que la pantalla lo solucionamos aplicando la política indicada
         if (min.getWidth() > screen.getWidth() || min.getHeight() > screen.getHeight()) {
             oversized = true;
             if (addScrollBar) { // Se añaden barras de scroll que permitirán visualizar toda la ventana
-                JScrollPane scrollPane = new JScrollPane(getContentPane());
+                JScrollPane scrollPane = getScrollPane();
                 // Se comprueba qué barras hacen falta
                 boolean horizontalBar = min.getWidth() > screen.getWidth();
                 boolean verticalBar = min.getHeight() > screen.getHeight();
@@ -93,7 +131,6 @@ public class Frame extends JFrame {
                 }
                 scrollPane.setHorizontalScrollBarPolicy(horizontalBar ? JScrollPane.HORIZONTAL_SCROLLBAR_ALWAYS : JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
                 scrollPane.setVerticalScrollBarPolicy(verticalBar ? JScrollPane.VERTICAL_SCROLLBAR_ALWAYS : JScrollPane.VERTICAL_SCROLLBAR_NEVER);
-                super.setContentPane(scrollPane);
                 hasScrollBars = true;
                 // Se tiene en cuenta el espacio extra para las barras de scroll
                 int scrollBarWidth = verticalBar ? scrollPane.getVerticalScrollBar().getMaximumSize().width : 0;
@@ -101,20 +138,17 @@ public class Frame extends JFrame {
                 min.setSize(Math.min(min.getWidth() + scrollBarWidth, screen.getWidth()), Math.min(min.getHeight() + scrollBarHeight, screen.getHeight()));
 
             }
-        } else if (hasScrollBars) { // Si ahora ya entra se eliminan las barras de scroll
-            super.setContentPane(getContentPane());
+        } else if (hasScrollBars) { // Si ahora ya entra se ocultan las barras de scroll, sin sacar al contenido del envoltorio
+            scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+            scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_NEVER);
             hasScrollBars = false;
         }
         setMinimumSize(min);
-        // Si se sale de la pantalla se reposiciona
-        if (getLocation().x + pref.width > screen.getWidth()) {
-            setLocation(Math.max(0, screen.width - pref.width), getLocation().y);
-        }
-        if (getLocation().y + pref.height > screen.getHeight()) {
-            setLocation(getLocation().x, Math.max(0, screen.height - pref.height));
-        }
+        keepOnScreen(screen, pref);
         pack = false;
         super.pack();
+        state[state.length - 1] = getSize();
+        packState = state;
         if (oversized) {
             if (showWarning) {
                 JOptionPane.showMessageDialog(this, "The frame is too big for this screen.", "Error", JOptionPane.ERROR_MESSAGE);
@@ -125,23 +159,101 @@ public class Frame extends JFrame {
         }
     }
 
+    /**
+     * Si la ventana con el tamaño indicado se sale de la pantalla se
+     * reposiciona.
+     */
+    private void keepOnScreen(Rectangle screen, Dimension size) {
+        if (getLocation().x + size.width > screen.x + screen.width) {
+            setLocation(Math.max(screen.x, screen.x + screen.width - size.width), getLocation().y);
+        }
+        if (getLocation().y + size.height > screen.y + screen.height) {
+            setLocation(getLocation().x, Math.max(screen.y, screen.y + screen.height - size.height));
+        }
+    }
+
+    /**
+     * Obtiene el espacio útil de la pantalla, descontando barras de tareas y
+     * similares. Se consulta al sistema una sola vez por pantalla.
+     */
+    private static synchronized Rectangle getScreenBounds(GraphicsConfiguration gc) {
+        if (gc == null) {
+            gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+        }
+        Rectangle screen = SCREENS.get(gc);
+        if (screen == null) {
+            screen = gc.getBounds();
+            Insets insets = Toolkit.getDefaultToolkit().getScreenInsets(gc);
+            screen.setBounds(screen.x + insets.left, screen.y + insets.top,
+                             screen.width - insets.left - insets.right, screen.height - insets.top - insets.bottom);
+            SCREENS.put(gc, screen);
+        }
+        return new Rectangle(screen);
+    }
+
+    /**
+     * Descarta el espacio útil de las pantallas que se había guardado, para
+     * que se vuelva a consultar en el próximo {@link #pack()}.
+     * <p>
+     * El de una pantalla se descarta automáticamente cuando cambia la
+     * configuración gráfica de una ventana de esta clase que esté en ella, lo
+     * que ocurre al moverla a otra pantalla o al cambiar la resolución. Solo
+     * hace falta llamarlo ante cambios que no la alteran, como mover o
+     * redimensionar la barra de tareas.
+     */
+    public static synchronized void invalidateScreenBounds() {
+        SCREENS.clear();
+    }
+
+    /**
+     * Descarta el espacio útil guardado de una pantalla.
+     */
+    private static synchronized void invalidateScreenBounds(GraphicsConfiguration gc) {
+        if (gc != null) {
+            SCREENS.remove(gc);
+        }
+    }
+
     /**
      * Permite realizar peticiones de {@link #pack()} de forma más eficiente. Es
      * especialmente útil cuando se realizan múltiples peticiones simultáneas,
      * ya que solo se efectuará {@link #pack()} una única vez en un instante
-     * posterior.
+     * posterior, antes de que se vuelva a pintar la ventana.
      */
     public void repack() {
         pack = true;
-        repaint();
+        if (!packScheduled) { // Todas las peticiones hasta entonces se atienden con un único pack
+            packScheduled = true;
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    packScheduled = false;
+                    if (pack) { // Puede haberse hecho ya por otro camino
+                        pack();
+                    }
+                }
+            });
+        }
     }
 
-    @Override
-    public void paint(Graphics g) {
-        if (pack) {
-            pack();
+    /**
+     * Pide a la ventana que contiene al componente que se reajuste a su
+     * contenido.
+     * <p>
+     * Si la ventana es de esta clase la petición se agrupa con las demás
+     * mediante {@link #repack()}, de forma que varias peticiones seguidas
+     * provocan un único {@link #pack()}. Si es cualquier otra ventana se
+     * reajusta inmediatamente.
+     *
+     * @param comp el componente
+     */
+    public static void repackAncestor(Component comp) {
+        Window window = SwingUtilities.getWindowAncestor(comp);
+        if (window instanceof Frame) {
+            ((Frame) window).repack();
+        } else if (window != null) {
+            window.pack();
         }
-        super.paint(g);
     }
 
     @Override
@@ -154,18 +266,90 @@ public class Frame extends JFrame {
 
     @Override
     public Container getContentPane() {
-        if (hasScrollBars) {
-            return (Container) ((JScrollPane) super.getContentPane()).getViewport().getView();
+        if (scrollPane != null) {
+            return (Container) scrollPane.getViewport().getView();
         }
         return super.getContentPane();
     }
 
     @Override
     public void setContentPane(Container contentPane) {
-        if (hasScrollBars) {
-            ((JScrollPane) super.getContentPane()).setViewportView(contentPane);
+        packState = null; // El nuevo contenido siempre se reajusta
+        if (scrollPane != null) {
+            scrollPane.setViewportView(contentPane);
+        } else {
+            super.setContentPane(contentPane);
+        }
+    }
+
+    /**
+     * Olvida el tamaño y la posición de la ventana, de forma que la próxima
+     * vez que se muestre se ajuste de nuevo a su contenido y se coloque donde
+     * decida el sistema operativo, como una ventana recién creada. Solo se
+     * puede llamar mientras la ventana no se está mostrando.
+     */
+    protected void resetGeometry() {
+        setPreferredSize(null);
+        setMinimumSize(null);
+        setMaximumSize(null);
+        setSize(0, 0);
+        setLocationByPlatform(true);
+        if (scrollPane != null) { // El envoltorio se queda pero sin barras ni desplazamiento
+            scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+            scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_NEVER);
+            scrollPane.getViewport().setViewPosition(new Point());
+            hasScrollBars = false;
+        }
+        packState = null;
+    }
+
+    /**
+     * Obtiene el envoltorio con barras de scroll del contenido. La primera vez
+     * que se necesita se coloca entre la ventana y el contenido y ya no se
+     * quita, de forma que mostrar u ocultar las barras solo cambia su política
+     * y no vuelve a reubicar toda la jerarquía de componentes.
+     */
+    private JScrollPane getScrollPane() {
+        if (scrollPane == null) {
+            Container contentPane = super.getContentPane();
+            JScrollPane wrapper = new JScrollPane();
+            wrapper.setBorder(null); // Sin barras no debe notarse que está
+            wrapper.getViewport().setLayout(new ContentLayout());
+            super.setContentPane(wrapper);
+            wrapper.setViewportView(contentPane);
+            scrollPane = wrapper;
+        }
+        return scrollPane;
+    }
+
+    /**
+     * Coloca el contenido dentro del envoltorio con barras de scroll. En las
+     * direcciones en las que no hay barra el contenido se ajusta siempre al
+     * tamaño visible, igual que si no estuviera envuelto.
+     */
+    private class ContentLayout extends ViewportLayout {
+
+        @Override
+        public void layoutContainer(Container parent) {
+            super.layoutContainer(parent);
+            JViewport viewport = (JViewport) parent;
+            Component view = viewport.getView();
+            if (view == null) {
+                return;
+            }
+            Dimension size = view.getSize();
+            Point position = viewport.getViewPosition();
+            if (scrollPane.getHorizontalScrollBarPolicy() == JScrollPane.HORIZONTAL_SCROLLBAR_NEVER) {
+                size.width = viewport.getWidth();
+                position.x = 0;
+            }
+            if (scrollPane.getVerticalScrollBarPolicy() == JScrollPane.VERTICAL_SCROLLBAR_NEVER) {
+                size.height = viewport.getHeight();
+                position.y = 0;
+            }
+            viewport.setViewSize(size);
+            viewport.setViewPosition(position);
         }
-        super.setContentPane(contentPane);
     }
 
     /**
@@ -181,6 +365,7 @@ public class Frame extends JFrame {
         this.addScrollBar = addScrollBar;
         this.showWarning = showWarning;
         this.closeWindow = closeWindow;
+        packState = null; // Se aplicará en el próximo pack
     }
 
     /**
@@ -191,6 +376,7 @@ public class Frame extends JFrame {
      */
     public void setAddScrollBarPolicy(boolean addScrollBar) {
         this.addScrollBar = addScrollBar;
+        packState = null;
     }
 
     /**
@@ -200,6 +386,7 @@ public class Frame extends JFrame {
      */
     public void setCloseWindowPolicy(boolean closeWindow) {
         this.closeWindow = closeWindow;
+        packState = null;
     }
 
     /**
@@ -210,6 +397,7 @@ public class Frame extends JFrame {
      */
     public void setShowWarningPolicy(boolean showWarning) {
         this.showWarning = showWarning;
+        packState = null;
     }
 
 }
@@ -17,11 +17,15 @@
 package libqew;
 
 import java.awt.Component;
-import java.awt.GridBagConstraints;
-import java.awt.GridBagLayout;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.Insets;
 import java.awt.LayoutManager;
+import java.awt.LayoutManager2;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 /**
  * GUI extensible en una sola página.
@@ -34,7 +38,6 @@ import java.beans.PropertyChangeListener;
 public class StackPanel extends ExtensiblePanel {
 
     private Component content;
-    private GridBagLayout layout;
     private boolean nameSet;
     private final PropertyChangeListener nameListener;
 
@@ -44,8 +47,7 @@ public class StackPanel extends ExtensiblePanel {
      */
     public StackPanel() {
         super();
-        layout = new GridBagLayout();
-        super.setLayout(layout);
+        super.setLayout(new StackLayout());
         nameListener = new PropertyChangeListener() { // Toma el nombre de su contenido
             @Override
             public void propertyChange(PropertyChangeEvent evt) {
@@ -86,31 +88,6 @@ public class StackPanel extends ExtensiblePanel {
         super.setName(name);
     }
 
-    @Override
-    protected void addImpl(Component comp, Object constraints, int index) {
-        super.addImpl(comp, constraints, index);
-        invalidate();
-    }
-
-    @Override
-    public void invalidate() {
-        /*
-         * Cada vez que cambia un componente hay que recalcular los pesos de
-         * cada fragmento para que se distribuya el tamaño proporcionalmente
-         */
-        for (int i = 0; i < getComponentCount(); i++) {
-            Component comp = getComponent(i);
-            GridBagConstraints c = new GridBagConstraints();
-            c.gridy = i;
-            c.gridx = 0;
-            c.fill = GridBagConstraints.BOTH;
-            c.weightx = 1;
-            c.weighty = comp.getPreferredSize().height;
-            layout.setConstraints(comp, c);
-        }
-        super.invalidate();
-    }
-
     /**
      * Obtiene el componente establecido como base de esta GUI extensible.
      *
@@ -146,4 +123,145 @@ public class StackPanel extends ExtensiblePanel {
         }
     }
 
+    /**
+     * Apila los fragmentos verticalmente ocupando todo el ancho y reparte la
+     * altura sobrante de forma proporcional a la altura preferida de cada uno,
+     * igual que haría un {@link java.awt.GridBagLayout} con un peso vertical
+     * igual a esa altura.
+     * <p>
+     * Guarda los tamaños preferido y mínimo de cada fragmento y solo los vuelve
+     * a pedir a los que se han invalidado desde entonces, de forma que anidar
+     * varias GUIs de este tipo no multiplica el coste de cada recolocación.
+     */
+    private static class StackLayout implements LayoutManager2 {
+
+        private final Map<Component, Dimension[]> sizes = new IdentityHashMap<>(); // Tamaños preferido y mínimo de cada fragmento
+
+        @Override
+        public void addLayoutComponent(String name, Component comp) {
+        }
+
+        @Override
+        public void addLayoutComponent(Component comp, Object constraints) {
+        }
+
+        @Override
+        public void removeLayoutComponent(Component comp) {
+            sizes.remove(comp);
+        }
+
+        @Override
+        public void invalidateLayout(Container target) {
+        }
+
+        @Override
+        public float getLayoutAlignmentX(Container target) {
+            return 0.5f;
+        }
+
+        @Override
+        public float getLayoutAlignmentY(Container target) {
+            return 0.5f;
+        }
+
+        @Override
+        public Dimension preferredLayoutSize(Container parent) {
+            return layoutSize(parent, 0);
+        }
+
+        @Override
+        public Dimension minimumLayoutSize(Container parent) {
+            return layoutSize(parent, 1);
+        }
+
+        @Override
+        public Dimension maximumLayoutSize(Container target) {
+            return new Dimension(Integer.MAX_VALUE, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public void layoutContainer(Container parent) {
+            Insets insets = parent.getInsets();
+            int width = Math.max(0, parent.getWidth() - insets.left - insets.right);
+            int height = parent.getHeight() - insets.top - insets.bottom;
+            int n = parent.getComponentCount();
+            Dimension[][] all = new Dimension[n][]; // Se consulta cada fragmento una sola vez
+            int preferredWidth = 0;
+            int preferredHeight = 0;
+            for (int i = 0; i < n; i++) {
+                Component comp = parent.getComponent(i);
+                if (comp.isVisible()) {
+                    all[i] = getSizes(comp);
+                    preferredWidth = Math.max(preferredWidth, all[i][0].width);
+                    preferredHeight += all[i][0].height;
+                }
+            }
+            // Si no cabe con el tamaño preferido se parte del mínimo
+            int type = width < preferredWidth || height < preferredHeight ? 1 : 0;
+            int[] heights = new int[n];
+            int used = 0;
+            double weight = 0;
+            for (int i = 0; i < n; i++) {
+                if (all[i] != null) {
+                    heights[i] = all[i][type].height;
+                    used += heights[i];
+                    weight += all[i][0].height; // El peso de cada fragmento es su altura preferida
+                }
+            }
+            int diff = height - used;
+            if (diff != 0 && weight > 0) { // Se reparte la diferencia según el peso de cada fragmento
+                used = 0;
+                for (int i = 0; i < n; i++) {
+                    if (all[i] != null) {
+                        heights[i] = Math.max(0, heights[i] + (int) ((double) diff * all[i][0].height / weight));
+                        used += heights[i];
+                    }
+                }
+            }
+            int y = insets.top + (height - used) / 2; // Lo que no se haya podido repartir queda centrado
+            for (int i = 0; i < n; i++) {
+                if (all[i] != null) {
+                    int top = Math.max(0, y); // Lo que quede por encima del contenedor se recorta
+                    int bottom = y + heights[i];
+                    if (width <= 0 || bottom <= top) { // Si no queda espacio se oculta
+                        parent.getComponent(i).setBounds(0, 0, 0, 0);
+                    } else {
+                        parent.getComponent(i).setBounds(insets.left, top, width, bottom - top);
+                    }
+                    y = bottom;
+                }
+            }
+        }
+
+        /**
+         * Calcula el tamaño preferido (0) o mínimo (1) del contenedor.
+         */
+        private Dimension layoutSize(Container parent, int type) {
+            int width = 0;
+            int height = 0;
+            for (int i = 0; i < parent.getComponentCount(); i++) {
+                Component comp = parent.getComponent(i);
+                if (comp.isVisible()) {
+                    Dimension size = getSizes(comp)[type];
+                    width = Math.max(width, size.width);
+                    height += size.height;
+                }
+            }
+            Insets insets = parent.getInsets();
+            return new Dimension(width + insets.left + insets.right, height + insets.top + insets.bottom);
+        }
+
+        /**
+         * Obtiene los tamaños preferido y mínimo guardados del componente, y
+         * solo los vuelve a calcular si ha cambiado desde la última vez.
+         */
+        private Dimension[] getSizes(Component comp) {
+            Dimension[] size = sizes.get(comp);
+            if (size == null || !comp.isValid() || comp.isPreferredSizeSet() || comp.isMinimumSizeSet()) {
+                size = new Dimension[]{comp.getPreferredSize(), comp.getMinimumSize()};
+                sizes.put(comp, size);
+            }
+            return size;
+        }
+    }
 }
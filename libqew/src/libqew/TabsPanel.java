@@ -21,16 +21,21 @@ import java.awt.CardLayout;
 import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.LayoutManager;
-import java.awt.Window;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 import javax.swing.JPanel;
 import javax.swing.JTabbedPane;
-import javax.swing.SwingUtilities;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import libqew.ExtensibleFrame.WindowCloseListener;
 
 /**
  * GUI extensible en pestañas.
@@ -44,13 +49,24 @@ import javax.swing.event.ChangeListener;
  * desactivarse y obtenerse el por defecto de Swing mediante
  * {@link #setFixedSize}, que tomará el tamaño mínimo y preferido de la pestaña
  * más grande para todas las demás.
+ * <p>
+ * Las pestañas pueden registrarse de forma perezosa mediante
+ * {@link #addTab(String, Supplier)}, construyéndose su contenido la primera vez
+ * que se seleccionen. Con {@link #setMaximumLoadedTabs} se limita además el
+ * número de estas pestañas que permanecen construidas: las ocultas usadas hace
+ * más tiempo que no tengan cambios sin guardar se limpian y se liberan, y se
+ * volverán a construir al seleccionarse de nuevo.
  *
  * @author Alejandro Hernández Ferrero
  */
 public class TabsPanel extends ExtensiblePanel {
 
     private final JTabbedPane tabs;
-    private final List<Component> components;
+    private final List<Tab> tabList; // Cada pestaña conoce su posición en esta lista
+    private final Map<Component, Tab> contentTabs; // Pestaña que envuelve a cada contenido construido
+    private final Set<Tab> loadedTabs; // Pestañas perezosas construidas, de la usada hace más tiempo a la más reciente
+    private Component[] components; // Contenidos construidos desde el último cambio, o null si hay que recalcularlos
+    private int maximumLoadedTabs;
     private boolean fixedSize;
     private final PropertyChangeListener nameListener;
 
@@ -60,27 +76,30 @@ public class TabsPanel extends ExtensiblePanel {
     public TabsPanel() {
         super();
         tabs = new JTabbedPane();
-        components = new ArrayList<>();
+        tabList = new ArrayList<>();
+        contentTabs = new IdentityHashMap<>();
+        loadedTabs = new LinkedHashSet<>();
         super.setLayout(new CardLayout());
         tabs.getModel().addChangeListener(new ChangeListener() { // Avisa a la ventana para que se compacte al cambiar de pestaña
             @Override
             public void stateChanged(ChangeEvent e) {
+                Tab tab = (Tab) tabs.getSelectedComponent();
+                if (tab != null) { // Las pestañas perezosas se construyen al seleccionarse
+                    tab.load();
+                }
                 if (fixedSize) { // Solo si no está activado este modo
                     return;
                 }
                 invalidate();
-                Window window = SwingUtilities.getWindowAncestor(TabsPanel.this);
-                if (window != null) {
-                    window.pack();
-                }
+                Frame.repackAncestor(TabsPanel.this);
             }
         });
         nameListener = new PropertyChangeListener() { // Enlaza el título de cada pestaña con el nombre de su contenido
             @Override
             public void propertyChange(PropertyChangeEvent evt) {
-                int index = tabs.indexOfComponent(((Component) evt.getSource()).getParent());
-                if (index > -1) {
-                    tabs.setTitleAt(index, evt.getNewValue().toString());
+                Tab tab = contentTabs.get((Component) evt.getSource());
+                if (tab != null) {
+                    tabs.setTitleAt(tab.index, evt.getNewValue().toString());
                 }
             }
         };
@@ -114,13 +133,36 @@ public class TabsPanel extends ExtensiblePanel {
 
     @Override
     protected void addImpl(Component comp, Object constraints, int index) {
+        insertTab(comp.getName(), new Tab(comp), index);
+    }
+
+    /**
+     * Añade una pestaña cuyo contenido no se construirá hasta que se seleccione
+     * por primera vez. Si el componente construido no tiene nombre tomará el
+     * título indicado; en otro caso el título se enlazará con su nombre como en
+     * el resto de pestañas.
+     * <p>
+     * Mientras no se haya construido, el contenido no formará parte de
+     * {@link #getComponents} y por tanto no se validará, guardará ni limpiará.
+     *
+     * @param title el título de la pestaña
+     * @param content la función que construye el contenido de la pestaña
+     */
+    public void addTab(String title, Supplier<? extends Component> content) {
+        insertTab(title, new Tab(title, content), -1);
+    }
+
+    private void insertTab(String title, Tab tab, int index) {
         if (tabs.getComponentCount() == 0) { // Se añade de forma perezosa para que sea detectado correctamente por el GUI builder
             super.addImpl(tabs, null, -1);
         }
-        tabs.insertTab(comp.getName(), null, new Tab(comp), null,
-                       index == -1 ? tabs.getTabCount() : index);
-        components.add(comp);
-        comp.addPropertyChangeListener("name", nameListener);
+        if (index == -1) {
+            index = tabs.getTabCount();
+        }
+        tabList.add(index, tab);
+        renumber(index);
+        tabs.insertTab(title, null, tab, null, index);
+        invalidateComponents();
     }
 
     @Override
@@ -128,9 +170,8 @@ public class TabsPanel extends ExtensiblePanel {
         if (fixedSize) { // Modo por defecto de Swing
             return tabs.getPreferredSize();
         }
-        Tab tab = (Tab) tabs.getSelectedComponent(); // Solo envuelve al componente y no tiene tamaño
-        if (tab != null) {
-            Component comp = tab.getContent(); // Es el que mantiene el tamaño real
+        Component comp = getSelectedContent(); // Es el que mantiene el tamaño real
+        if (comp != null) {
             // El tamaño es el del componente seleccionado más la altura de la cabecera
             return new Dimension(comp.getPreferredSize().width, comp.getPreferredSize().height + tabs.getPreferredSize().height); // tabs dará el tamaño de la cabecera
         } else {
@@ -143,9 +184,8 @@ public class TabsPanel extends ExtensiblePanel {
         if (fixedSize) {
             return tabs.getMinimumSize();
         }
-        Tab tab = (Tab) tabs.getSelectedComponent();
-        if (tab != null) {
-            Component comp = tab.getContent();
+        Component comp = getSelectedContent();
+        if (comp != null) {
             return new Dimension(comp.getMinimumSize().width, comp.getMinimumSize().height + tabs.getMinimumSize().height);
         } else {
             return super.getMinimumSize();
@@ -157,52 +197,162 @@ public class TabsPanel extends ExtensiblePanel {
         if (fixedSize) {
             return tabs.getMaximumSize();
         }
-        Tab tab = (Tab) tabs.getSelectedComponent();
-        if (tab != null) {
-            Component comp = tab.getContent();
+        Component comp = getSelectedContent();
+        if (comp != null) {
             return new Dimension(comp.getMaximumSize().width, comp.getMaximumSize().height + tabs.getMaximumSize().height);
         } else {
             return super.getMaximumSize();
         }
     }
 
+    /**
+     * Obtiene el contenido de la pestaña seleccionada si ya está construido.
+     * Los tamaños se miden solo con él, sin construir ni liberar pestañas, ya
+     * que se consultan en mitad del layout; la pestaña se carga al
+     * seleccionarse.
+     */
+    private Component getSelectedContent() {
+        Tab tab = (Tab) tabs.getSelectedComponent(); // Solo envuelve al componente y no tiene tamaño
+        return tab == null ? null : tab.getContent();
+    }
+
+    /**
+     * Obtiene los contenidos de las pestañas que están construidos.
+     * <p>
+     * El resultado se guarda y se reutiliza hasta que se añada, quite,
+     * construya o libere alguna pestaña, así que entre cambios solo cuesta
+     * copiarlo.
+     *
+     * @return una copia de los contenidos de las pestañas construidos
+     */
     @Override
     public Component[] getComponents() {
-        return components.toArray(new Component[0]);
+        if (components == null) {
+            List<Component> list = new ArrayList<>(tabList.size());
+            for (Tab tab : tabList) {
+                if (tab.getContent() != null) { // Las pestañas perezosas sin construir no tienen contenido
+                    list.add(tab.getContent());
+                }
+            }
+            components = list.toArray(new Component[0]);
+        }
+        return components.clone(); // Se copia para que quien lo modifique no altere el guardado
     }
 
     /**
-     * Obtiene el contenido de la pestaña n.
+     * Obtiene el contenido de la pestaña n, construyéndolo si es una pestaña
+     * perezosa que aún no se había seleccionado.
      *
      * @param n el índice de la pestaña
      * @return el componente en la pestaña
      */
     public Component getTab(int n) {
-        return components.get(n);
+        return tabList.get(n).load();
     }
 
     @Override
     public void remove(Component comp) {
-        tabs.remove(comp.getParent());
-        components.remove(comp);
-        comp.removePropertyChangeListener("name", nameListener);
-        reset();
+        Tab tab = contentTabs.get(comp);
+        if (tab != null) {
+            remove(tab.index);
+        }
     }
 
     @Override
     public void remove(int index) {
-        components.get(index).removePropertyChangeListener("name", nameListener);
+        Tab tab = tabList.remove(index);
+        renumber(index);
         tabs.remove(index);
-        components.remove(index);
+        tab.discard();
+        invalidateComponents();
         reset();
     }
 
     @Override
     public void removeAll() {
-        for (Component comp : getComponents()) {
-            comp.removePropertyChangeListener("name", nameListener);
+        for (Tab tab : tabList) {
+            tab.discard();
         }
+        tabList.clear();
+        contentTabs.clear();
         tabs.removeAll();
+        invalidateComponents();
+        reset();
+    }
+
+    /**
+     * Establece cuántas pestañas perezosas pueden permanecer construidas a la
+     * vez. Al superarse se liberan las ocultas que se usaron hace más tiempo,
+     * limpiando antes su contenido.
+     * <p>
+     * Nunca se guarda nada al liberar, ya que eso solo debe ocurrir al aceptar
+     * la ventana, así que las pestañas que pueden tener cambios sin guardar se
+     * conservan hasta que se acepte o cancele: las que contienen una GUI
+     * extensible que no lleva la cuenta de sus cambios (ver
+     * {@link ExtensiblePanel#setTrackChanges}) o que tiene cambios, y las que
+     * contienen otro {@link WindowCloseListener}. Las pestañas añadidas
+     * directamente con su componente nunca se liberan.
+     *
+     * @param maximumLoadedTabs el número máximo de pestañas perezosas
+     * construidas, o 0 para no limitarlo
+     */
+    public void setMaximumLoadedTabs(int maximumLoadedTabs) {
+        this.maximumLoadedTabs = maximumLoadedTabs;
+        releaseTabs(null);
+    }
+
+    /**
+     * Obtiene cuántas pestañas perezosas pueden permanecer construidas a la
+     * vez.
+     *
+     * @return el número máximo de pestañas perezosas construidas, o 0 si no
+     * está limitado
+     */
+    public int getMaximumLoadedTabs() {
+        return maximumLoadedTabs;
+    }
+
+    /**
+     * Actualiza la posición guardada en cada pestaña a partir de la indicada,
+     * tras insertar o quitar una. Al añadir o quitar al final no hay que
+     * recorrer ninguna otra, pero en cualquier otra posición el coste es
+     * lineal en el número de pestañas que le siguen, igual que el de
+     * desplazarlas en el propio {@link JTabbedPane}.
+     */
+    private void renumber(int from) {
+        for (int i = from; i < tabList.size(); i++) {
+            tabList.get(i).index = i;
+        }
+    }
+
+    /**
+     * Descarta los contenidos guardados y avisa de que han podido cambiar.
+     */
+    private void invalidateComponents() {
+        components = null;
+        invalidateListeners();
+    }
+
+    /**
+     * Libera las pestañas perezosas ocultas usadas hace más tiempo hasta no
+     * superar el máximo establecido.
+     *
+     * @param loading la pestaña que se acaba de cargar, que no se libera
+     */
+    private void releaseTabs(Tab loading) {
+        if (maximumLoadedTabs <= 0) {
+            return;
+        }
+        int excess = loadedTabs.size() - maximumLoadedTabs;
+        Iterator<Tab> it = loadedTabs.iterator();
+        while (excess > 0 && it.hasNext()) {
+            Tab tab = it.next();
+            if (tab != tabs.getSelectedComponent() && tab != loading && tab.isReleasable()) { // La pestaña visible, la que se carga y las que tienen cambios no se liberan
+                it.remove();
+                tab.release();
+                excess--;
+            }
+        }
     }
 
     /**
@@ -229,7 +379,7 @@ public class TabsPanel extends ExtensiblePanel {
      * correctamente por el GUI builder.
      */
     private void reset() {
-        if (tabs.getComponentCount() == 0) {
+        if (tabs.getComponentCount() == 0 && tabs.getParent() == this) {
             super.remove(0);
         }
     }
@@ -247,23 +397,106 @@ public class TabsPanel extends ExtensiblePanel {
      */
     private class Tab extends JPanel {
 
-        private final Component content;
+        private final String title;
+        private final Supplier<? extends Component> supplier;
+        private Component content;
+        private int index;
 
         /**
          * Solo envuelve al componente
          */
         public Tab(Component content) {
-            this.content = content;
+            this(content.getName(), null);
+            attach(content);
+        }
+
+        /**
+         * Envuelve el componente que construirá la función al cargarse
+         */
+        public Tab(String title, Supplier<? extends Component> supplier) {
+            this.title = title;
+            this.supplier = supplier;
             setLayout(new BorderLayout());
-            add(content, BorderLayout.CENTER);
         }
 
         public Component getContent() {
             return content;
         }
 
+        /**
+         * Obtiene el contenido, construyéndolo si aún no lo estaba, y lo marca
+         * como el usado más recientemente.
+         */
+        public Component load() {
+            if (supplier == null) {
+                return content;
+            }
+            if (content == null) {
+                Component comp = supplier.get();
+                if (comp.getName() == null) {
+                    comp.setName(title);
+                }
+                attach(comp);
+                if (index < tabs.getTabCount() && tabs.getComponentAt(index) == this) { // Puede cargarse antes de estar insertada
+                    tabs.setTitleAt(index, comp.getName());
+                }
+                invalidateComponents();
+            }
+            loadedTabs.remove(this);
+            loadedTabs.add(this);
+            releaseTabs(this);
+            return content;
+        }
+
+        /**
+         * Indica si se puede soltar el contenido sin perder cambios que aún
+         * no se han guardado.
+         */
+        public boolean isReleasable() {
+            if (content instanceof ExtensiblePanel) {
+                return !((ExtensiblePanel) content).isDirty();
+            }
+            return !(content instanceof WindowCloseListener); // Sus cambios no se pueden conocer
+        }
+
+        /**
+         * Limpia y suelta el contenido para que se vuelva a construir la
+         * próxima vez que se cargue.
+         */
+        public void release() {
+            if (content instanceof ExtensiblePanel) {
+                ((ExtensiblePanel) content).cleanAll();
+            }
+            content.removePropertyChangeListener("name", nameListener);
+            contentTabs.remove(content);
+            remove(content);
+            content = null;
+            invalidateComponents();
+        }
+
+        /**
+         * Deja de seguir al contenido al quitarse la pestaña.
+         */
+        public void discard() {
+            if (content != null) {
+                content.removePropertyChangeListener("name", nameListener);
+                contentTabs.remove(content);
+            }
+            loadedTabs.remove(this);
+        }
+
+        private void attach(Component content) {
+            this.content = content;
+            add(content, BorderLayout.CENTER);
+            content.addPropertyChangeListener("name", nameListener);
+            contentTabs.put(content, this);
+        }
+
         @Override
         public Dimension getPreferredSize() {
+            if (content == null) { // Sin construir no ocupa nada
+                return new Dimension(0, 0);
+            }
             if (fixedSize) { // Si está activado este modo se anula el comportamiento de esta clase
                 return content.getPreferredSize();
             }
@@ -276,6 +509,9 @@ public class TabsPanel extends ExtensiblePanel {
 
         @Override
         public Dimension getMinimumSize() {
+            if (content == null) { // Sin construir no ocupa nada
+                return new Dimension(0, 0);
+            }
             if (fixedSize) {
                 return content.getMinimumSize();
             }
@@ -288,6 +524,9 @@ public class TabsPanel extends ExtensiblePanel {
 
         @Override
         public Dimension getMaximumSize() {
+            if (content == null) { // Sin construir no ocupa nada
+                return new Dimension(0, 0);
+            }
             if (fixedSize) {
                 return content.getMaximumSize();
             }
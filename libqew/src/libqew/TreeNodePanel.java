@@ -20,6 +20,8 @@ import java.awt.BorderLayout;
 import java.awt.Component;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Collection;
 import javax.swing.tree.MutableTreeNode;
 
 /**
@@ -116,4 +118,26 @@ public class TreeNodePanel extends ExtensiblePanel {
         }
     }
 
+    /**
+     * Añade los componentes como nodos hijo de la misma forma que
+     * {@link #addChild}, pero todos a la vez mediante
+     * {@link TreeViewPanel.Node#addChildren}.
+     *
+     * @param list los nuevos nodos hijo
+     */
+    @Override
+    public void addChildrenList(Collection<Component> list) {
+        ArrayList<MutableTreeNode> children = new ArrayList<>(list.size());
+        for (Component child : list) {
+            if (child instanceof MutableTreeNode) {
+                children.add((MutableTreeNode) child);
+            } else if (child instanceof TreeNodePanel) {
+                children.add(((TreeNodePanel) child).getNode());
+            } else {
+                children.add(new TreeViewPanel.Node(child));
+            }
+        }
+        node.addChildren(children);
+    }
+
 }
@@ -19,31 +19,51 @@ package libqew;
 import java.awt.BorderLayout;
 import java.awt.CardLayout;
 import java.awt.Component;
+import java.awt.Dimension;
 import java.awt.LayoutManager;
-import java.awt.Window;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.JTree;
 import javax.swing.SwingConstants;
-import javax.swing.SwingUtilities;
+import javax.swing.text.Position;
 import javax.swing.event.TreeExpansionEvent;
 import javax.swing.event.TreeExpansionListener;
 import javax.swing.event.TreeModelEvent;
 import javax.swing.event.TreeModelListener;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
+import javax.swing.event.TreeWillExpandListener;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.ExpandVetoException;
 import javax.swing.tree.MutableTreeNode;
 import javax.swing.tree.TreePath;
+import libqew.ExtensibleFrame.WindowCloseListener;
 
 /**
  * GUI extensible en vista de árbol.
@@ -61,7 +81,12 @@ import javax.swing.tree.TreePath;
  * {@link TreeNode}, o bien sean subclase de {@link DefaultMutableTreeNode}. Se
  * recomienda el uso de {@link Node}, que extiende
  * {@link DefaultMutableTreeNode} con métodos útiles e informa automáticamente a
- * la GUI de los eventos que le afectan.
+ * la GUI de los eventos que le afectan, o {@link LazyNode} si se desea aplazar
+ * la creación del contenido hasta que se seleccione.
+ * <p>
+ * Los nombres de todos los nodos, incluidos los de ramas colapsadas, se
+ * mantienen indexados, por lo que pueden buscarse con {@link #findNodes} y la
+ * búsqueda al escribir sobre el árbol encuentra cualquier nodo sin recorrerlo.
  *
  * @author Alejandro Hernández Ferrero
  */
@@ -71,6 +96,11 @@ public class TreeViewPanel extends ExtensiblePanel {
     private final JTree tree;
     private final DefaultTreeModel model;
     private final JSplitPane splitPane;
+    private final CardHost right; // Parte derecha, con los últimos componentes mostrados
+    private final IdentityHashMap<Component, MutableTreeNode> componentNodes; // Índice de nodos por componente
+    private final IdentityHashMap<MutableTreeNode, Component> nodeComponents; // Componente indexado de cada nodo
+    private final NameIndex nameIndex; // Índice de nodos por nombre
+    private Component[] components; // Componentes del árbol desde el último cambio en el modelo, o null si hay que recalcularlos
     private JPanel left;
     private Component bottom;
     private Component top;
@@ -86,14 +116,33 @@ public class TreeViewPanel extends ExtensiblePanel {
         super.setLayout(new CardLayout());
         root = new Root();
         model = new DefaultTreeModel(root);
-        tree = new JTree();
+        componentNodes = new IdentityHashMap<>();
+        nodeComponents = new IdentityHashMap<>();
+        nameIndex = new NameIndex();
+        tree = new JTree() {
+            /*
+             * La búsqueda al escribir sobre el árbol se resuelve con el índice
+             * de nombres, por lo que encuentra también los nodos colapsados. Al
+             * seleccionarlo el árbol expande sus padres para mostrarlo.
+             */
+            @Override
+            public TreePath getNextMatch(String prefix, int startingRow, Position.Bias bias) {
+                TreePath lead = getLeadSelectionPath();
+                MutableTreeNode from = lead == null ? null : (MutableTreeNode) lead.getLastPathComponent();
+                boolean next = lead != null && getRowForPath(lead) != startingRow; // Se pide pasar a la siguiente coincidencia
+                MutableTreeNode match = nameIndex.nextMatch(prefix, from, bias != Position.Bias.Backward, next);
+                return match == null ? null : new TreePath(model.getPathToRoot(match));
+            }
+        };
         tree.setVisibleRowCount(0);
         tree.setRootVisible(false);
         empty = true;
         JScrollPane treeScrollPane = new JScrollPane(tree);
         left = new JPanel(new BorderLayout());
         left.add(treeScrollPane, BorderLayout.CENTER);
-        splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, left, (Component) root.getUserObject());
+        right = new CardHost();
+        right.show((Component) root.getUserObject());
+        splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, left, right);
 
         tree.addTreeSelectionListener(new TreeSelectionListener() { // Cuando se selecciona un nodo
             @Override
@@ -102,6 +151,9 @@ public class TreeViewPanel extends ExtensiblePanel {
                 if (object == null) { // Si no hay selección no se hace nada
                     return;
                 }
+                if (object instanceof LazyNode) { // Si su contenido aún no se ha creado se crea ahora
+                    ((LazyNode) object).realize();
+                }
                 Object userObject;
                 // Se da compatibilidad con estos 2 tipos de nodo
                 if (object instanceof DefaultMutableTreeNode) {
@@ -115,8 +167,9 @@ public class TreeViewPanel extends ExtensiblePanel {
                 }
                 if (userObject != null && userObject instanceof Component) { // Se comprueba que el contenido del nodo es válido
                     Component comp = (Component) userObject;
-                    splitPane.setRightComponent(comp); // Muestra el componente seleccionado
-                    pack(); // Autoajusta la GUI al nuevo contenido
+                    if (right.show(comp)) { // Muestra el componente seleccionado
+                        pack(); // Autoajusta la GUI al nuevo contenido si su tamaño es distinto
+                    }
                     tree.scrollPathToVisible(tree.getSelectionPath()); // Centra la vista de la jerarquía en la selección
                 }
             }
@@ -132,11 +185,28 @@ public class TreeViewPanel extends ExtensiblePanel {
 
             @Override
             public void treeCollapsed(TreeExpansionEvent event) {
+                Object node = event.getPath().getLastPathComponent();
+                if (node instanceof Node && ((Node) node).isReleaseOnCollapse()) { // Se liberan los hijos que se crearon al expandirlo
+                    ((Node) node).releaseChildren();
+                }
                 boundVisibleRowCount();
                 splitPane.resetToPreferredSizes();
                 pack();
             }
         });
+        tree.addTreeWillExpandListener(new TreeWillExpandListener() { // Antes de expandir un nodo se crean sus hijos si aún no existen
+            @Override
+            public void treeWillExpand(TreeExpansionEvent event) throws ExpandVetoException {
+                Object node = event.getPath().getLastPathComponent();
+                if (node instanceof Node) {
+                    ((Node) node).loadChildren();
+                }
+            }
+
+            @Override
+            public void treeWillCollapse(TreeExpansionEvent event) throws ExpandVetoException {
+            }
+        });
         model.addTreeModelListener(new TreeModelListener() {
             @Override
             public void treeNodesChanged(TreeModelEvent e) {
@@ -153,7 +223,7 @@ public class TreeViewPanel extends ExtensiblePanel {
                             userObject = node.getUserObject();
                         }
                         if (userObject != null && userObject instanceof Component) {
-                            splitPane.setRightComponent((Component) userObject);
+                            right.show((Component) userObject);
                         }
                         break;
                     }
@@ -190,7 +260,6 @@ public class TreeViewPanel extends ExtensiblePanel {
                     TreeViewPanel.super.remove(0);
                 }
                 boundVisibleRowCount();
-                splitPane.setRightComponent(getSelectedComponent());
                 splitPane.resetToPreferredSizes();
                 pack();
             }
@@ -211,34 +280,75 @@ public class TreeViewPanel extends ExtensiblePanel {
         model.addTreeModelListener(new TreeModelListener() {
             @Override
             public void treeNodesChanged(TreeModelEvent e) {
+                invalidateComponents(); // Los componentes del árbol pueden haber cambiado
+                if (e.getChildren() == null) { // Ha cambiado la raíz, que no se indexa
+                    return;
+                }
+                for (Object ch : e.getChildren()) { // Su contenido puede haber cambiado así que se reindexan
+                    Component old = nodeComponents.get(ch);
+                    unindexNode((MutableTreeNode) ch);
+                    indexNode((MutableTreeNode) ch);
+                    if (old != null && old != getUserObject(ch) && !componentNodes.containsKey(old)) { // Se descarta de la parte derecha el contenido sustituido
+                        right.evict(old);
+                    }
+                }
+                restoreShownComponent();
             }
 
             @Override
             public void treeNodesInserted(TreeModelEvent e) {
+                invalidateComponents();
+                for (Object ch : e.getChildren()) { // Se indexan los nodos insertados junto con sus descendientes
+                    indexSubtree((MutableTreeNode) ch);
+                }
             }
 
             @Override
             public void treeNodesRemoved(TreeModelEvent e) {
+                invalidateComponents();
+                for (Object ch : e.getChildren()) { // Se eliminan del índice los nodos eliminados junto con sus descendientes
+                    unindexSubtree((MutableTreeNode) ch);
+                }
                 for (Object ch : e.getChildren()) { // Para cada nodo eliminado
                     // Hay que comprobar si el que se va a borrar es el seleccionado para en ese caso seleccionar otro
                     if (ch.equals(tree.getLastSelectedPathComponent())) { // Si el que se va a eliminar es el que está seleccionado
                         int index = tree.getMinSelectionRow(); // Índice del nodo seleccionado
                         if (index > 0) { // Si no es el primero se selecciona el anterior
                             tree.setSelectionRow(index - 1);
-                            splitPane.setRightComponent((Component) ((TreeNode) tree.getLastSelectedPathComponent()).getUserObject());
+                            right.show((Component) ((TreeNode) tree.getLastSelectedPathComponent()).getUserObject());
                         } else if (index < tree.getRowCount() - 1) { // Si es el primero pero no es el último se selecciona el siguiente
                             tree.setSelectionRow(index + 1);
-                            splitPane.setRightComponent((Component) ((TreeNode) tree.getLastSelectedPathComponent()).getUserObject());
+                            right.show((Component) ((TreeNode) tree.getLastSelectedPathComponent()).getUserObject());
                         } else { // Si no, es que quedará vacío así que se selecciona la raíz
                             tree.clearSelection();
-                            splitPane.setRightComponent((Component) getRoot().getUserObject());
+                            right.show((Component) getRoot().getUserObject());
                         }
                     }
                 }
+                for (Object ch : e.getChildren()) { // Se descartan de la parte derecha los componentes eliminados
+                    evictSubtree((MutableTreeNode) ch);
+                }
+                restoreShownComponent();
             }
 
             @Override
             public void treeStructureChanged(TreeModelEvent e) {
+                invalidateComponents();
+                // No se indica qué ha cambiado así que se reconstruye el índice completo
+                componentNodes.clear();
+                nodeComponents.clear();
+                nameIndex.clear();
+                Enumeration i = getRoot().children();
+                while (i.hasMoreElements()) {
+                    indexSubtree((MutableTreeNode) i.nextElement());
+                }
+                // Se descartan de la parte derecha los componentes que ya no están en el árbol
+                for (Component comp : right.getCachedComponents()) {
+                    if (!componentNodes.containsKey(comp) && comp != getRoot().getUserObject()) {
+                        right.evict(comp);
+                    }
+                }
+                restoreShownComponent();
             }
         });
     }
@@ -268,7 +378,7 @@ public class TreeViewPanel extends ExtensiblePanel {
      * @return el componente seleccionado
      */
     public Component getSelectedComponent() {
-        return splitPane.getRightComponent();
+        return right.getVisible();
     }
 
     /**
@@ -312,6 +422,34 @@ public class TreeViewPanel extends ExtensiblePanel {
         return maxRows;
     }
 
+    /**
+     * Establece cuántos de los últimos componentes mostrados se mantienen en
+     * la parte derecha.
+     * <p>
+     * Volver a seleccionar un nodo cuyo componente se mantiene solo cambia el
+     * componente visible, sin sacarlo ni volver a añadirlo a la GUI, y la
+     * ventana solo se reajusta si su tamaño preferido es distinto del que se
+     * mostraba. Los que superen el límite se quitan empezando por el que lleva
+     * más tiempo sin mostrarse.
+     * <p>
+     * El valor por defecto es 8.
+     *
+     * @param max el número de componentes a mantener, al menos 1
+     */
+    public void setMaximumCachedComponents(int max) {
+        right.setMaximumCards(max);
+    }
+
+    /**
+     * Obtiene cuántos de los últimos componentes mostrados se mantienen en la
+     * parte derecha.
+     *
+     * @return el límite establecido
+     */
+    public int getMaximumCachedComponents() {
+        return right.getMaximumCards();
+    }
+
     /**
      * Establece un título para mostrar por encima de la jerarquía de nodos.
      * <p>
@@ -393,9 +531,8 @@ public class TreeViewPanel extends ExtensiblePanel {
     /**
      * Inserta un componente como hijo de otro que ya se encuentra en el árbol.
      * <p>
-     * Si se dispone del nodo del padre es preferible usar
-     * {@link #insertIntoNode} ya que se evita la búsqueda del nodo en toda la
-     * jerarquía.
+     * El nodo del padre se obtiene mediante {@link #getNode}, por lo que si se
+     * dispone de él es preferible usar {@link #insertIntoNode}.
      *
      * @param comp el componente a insertar
      * @param parent el componente al que se le insertará como hijo
@@ -431,22 +568,109 @@ public class TreeViewPanel extends ExtensiblePanel {
     }
 
     /**
-     * Obtiene todos los componentes que forman parte del árbol.
+     * Inserta un conjunto de nodos como hijos de otro que ya se encuentra en el
+     * árbol.
      * <p>
-     * Es más conveniente que {@link #getComponents()} ya que evita crear un
-     * array extra.
+     * A diferencia de insertarlos uno a uno mediante {@link #insertNodeInto},
+     * se avisa al modelo con un único evento, por lo que la GUI solo se
+     * reajusta una vez.
+     *
+     * @param nodes los nodos a insertar
+     * @param parent el nodo al que se le insertarán como hijos
+     */
+    public void insertNodesInto(Collection<? extends MutableTreeNode> nodes, MutableTreeNode parent) {
+        if (nodes.isEmpty()) {
+            return;
+        }
+        int[] indices = new int[nodes.size()];
+        int n = 0;
+        for (MutableTreeNode node : nodes) {
+            indices[n] = parent.getChildCount();
+            parent.insert(node, indices[n]);
+            n++;
+        }
+        model.nodesWereInserted(parent, indices);
+    }
+
+    /**
+     * Añade los componentes como nodos del primer nivel de la jerarquía
+     * mediante {@link #insertNodesInto}.
+     *
+     * @param list los componentes a añadir
+     */
+    @Override
+    public void addChildrenList(Collection<Component> list) {
+        ArrayList<MutableTreeNode> nodes = new ArrayList<>(list.size());
+        for (Component comp : list) {
+            if (comp instanceof MutableTreeNode) {
+                nodes.add((MutableTreeNode) comp);
+            } else if (comp instanceof TreeNodePanel) {
+                nodes.add(((TreeNodePanel) comp).getNode());
+            } else {
+                nodes.add(new Node(comp));
+            }
+        }
+        insertNodesInto(nodes, getRoot());
+    }
+
+    /**
+     * Obtiene todos los componentes que forman parte del árbol, como una vista
+     * no modificable de los que se tienen guardados. A diferencia de
+     * {@link #getComponents()} no los copia.
      *
      * @return los componentes que forman parte del árbol
      */
     public Collection<Component> components() {
-        ArrayList<Component> list = new ArrayList();
-        getComponents(getRoot(), list);
-        return list;
+        return Collections.unmodifiableList(Arrays.asList(getComponentArray()));
     }
 
+    /**
+     * Obtiene todos los componentes que forman parte del árbol.
+     * <p>
+     * El resultado se guarda y se reutiliza hasta que cambie el modelo del
+     * árbol, por lo que entre cambios solo cuesta copiarlo. Para recorrerlos
+     * sin copia se puede usar {@link #forEachComponent} o
+     * {@link #components()}.
+     *
+     * @return una copia de los componentes que forman parte del árbol
+     */
     @Override
     public Component[] getComponents() {
-        return components().toArray(new Component[0]); // Es más eficiente pasándole un array vacío
+        return getComponentArray().clone(); // Se copia para que quien lo modifique no altere el guardado
+    }
+
+    /**
+     * Obtiene el array guardado de los componentes del árbol, calculándolo si
+     * ha cambiado el modelo. Es compartido y no debe salir de esta clase.
+     */
+    private Component[] getComponentArray() {
+        if (components == null) {
+            final ArrayList<Component> list = new ArrayList<>();
+            forEachComponent(getRoot(), new Consumer<Component>() {
+                @Override
+                public void accept(Component comp) {
+                    list.add(comp);
+                }
+            });
+            components = list.toArray(new Component[0]); // Es más eficiente pasándole un array vacío
+        }
+        return components;
+    }
+
+    /**
+     * Recorre todos los componentes que forman parte del árbol sin crear
+     * ninguna colección intermedia.
+     *
+     * @param action la acción a realizar con cada componente
+     */
+    public void forEachComponent(Consumer<? super Component> action) {
+        if (components != null) { // Si ya se tienen guardados no hace falta recorrer el árbol
+            for (Component comp : components) {
+                action.accept(comp);
+            }
+        } else {
+            forEachComponent(getRoot(), action);
+        }
     }
 
     /**
@@ -495,8 +719,9 @@ public class TreeViewPanel extends ExtensiblePanel {
     /**
      * Obtiene el nodo en el que se encuentra este componente.
      * <p>
-     * Si el componente se encuentra en más de un nodo se devolverá el primero
-     * que se encuentre.
+     * Se consulta primero el índice de componentes del árbol y solo si no está
+     * indexado se busca en toda la jerarquía. Si el componente se encuentra en
+     * más de un nodo se devolverá el primero que se indexó.
      *
      * @param comp el componente
      * @return el nodo encontrado, <code>null</code> si no se encontró
@@ -508,7 +733,73 @@ public class TreeViewPanel extends ExtensiblePanel {
         if (comp instanceof TreeNodePanel) {
             return ((TreeNodePanel) comp).getNode();
         }
-        return findNode(getRoot(), comp);
+        MutableTreeNode node = getIndexedNode(comp);
+        if (node == null) { // Si no está indexado se busca en toda la jerarquía
+            node = findNode(getRoot(), comp);
+            if (node != null && getUserObject(node) == comp) { // Solo se indexa si contiene este mismo componente
+                componentNodes.put(comp, node);
+                nodeComponents.put(node, comp);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Obtiene el nodo en el que se encuentra este componente consultando
+     * únicamente el índice que mantiene el árbol, en tiempo constante.
+     * <p>
+     * El índice se actualiza con los eventos del modelo, por lo que solo
+     * contendrá los nodos insertados o modificados a través de él (como hacen
+     * los métodos de esta clase y de {@link Node}). A diferencia de
+     * {@link #getNode} no se recurre a recorrer la jerarquía si el componente
+     * no está indexado.
+     * <p>
+     * Si el nodo indexado ya no contiene el componente (porque se le cambió el
+     * contenido sin avisar al modelo) se elimina la entrada del índice y se
+     * devuelve <code>null</code>.
+     *
+     * @param comp el componente
+     * @return el nodo indexado, <code>null</code> si no está indexado
+     */
+    public MutableTreeNode getIndexedNode(Component comp) {
+        MutableTreeNode node = componentNodes.get(comp);
+        if (node != null && getUserObject(node) != comp) { // Entrada obsoleta
+            componentNodes.remove(comp);
+            if (nodeComponents.get(node) == comp) {
+                nodeComponents.remove(node);
+            }
+            return null;
+        }
+        return node;
+    }
+
+    /**
+     * Busca los nodos cuyo nombre contiene el texto, sin distinguir mayúsculas
+     * de minúsculas. Se obtienen primero, en orden alfabético, los que empiezan
+     * por el texto y después el resto.
+     * <p>
+     * Se resuelve con el índice de nombres que mantiene el árbol, por lo que
+     * no depende del número de nodos sino del de resultados. Las búsquedas de
+     * menos de 3 caracteres que no estén al principio del nombre sí recorren
+     * los nombres distintos del árbol.
+     *
+     * @param text el texto a buscar
+     * @return los nodos encontrados
+     */
+    public List<MutableTreeNode> findNodes(String text) {
+        return nameIndex.find(text);
+    }
+
+    /**
+     * Selecciona el nodo, expandiendo sus padres si estaban colapsados y
+     * desplazando la jerarquía hasta él.
+     *
+     * @param node el nodo a seleccionar
+     */
+    public void selectNode(MutableTreeNode node) {
+        TreePath path = new TreePath(model.getPathToRoot(node));
+        tree.setSelectionPath(path);
+        tree.scrollPathToVisible(path);
     }
 
     /**
@@ -547,30 +838,111 @@ public class TreeViewPanel extends ExtensiblePanel {
     }
 
     /**
-     * Obtiene recursivamente todos los componentes a partir de un nodo
+     * Añade al índice el nodo y todos sus descendientes.
      */
-    private void getComponents(MutableTreeNode node, List<Component> list) {
+    private void indexSubtree(MutableTreeNode node) {
+        indexNode(node);
         Enumeration i = node.children();
         while (i.hasMoreElements()) {
-            MutableTreeNode child = (MutableTreeNode) i.nextElement();
-            Object userObject;
-            if (child instanceof DefaultMutableTreeNode) {
-                DefaultMutableTreeNode ch = (DefaultMutableTreeNode) child;
-                userObject = ch.getUserObject();
-            } else if (child instanceof TreeNode) {
-                TreeNode tn = (TreeNode) child;
-                userObject = tn.getUserObject();
-            } else { // No es un nodo válido
-                return;
-            }
-            if (userObject != null && userObject instanceof Component) { // Si el contenido es un componente
-                Component comp = (Component) userObject;
-                list.add(comp); // Se añade
+            indexSubtree((MutableTreeNode) i.nextElement());
+        }
+    }
+
+    /**
+     * Elimina del índice el nodo y todos sus descendientes.
+     */
+    private void unindexSubtree(MutableTreeNode node) {
+        unindexNode(node);
+        Enumeration i = node.children();
+        while (i.hasMoreElements()) {
+            unindexSubtree((MutableTreeNode) i.nextElement());
+        }
+    }
+
+    /**
+     * Descarta de la parte derecha el componente del nodo y los de todos sus
+     * descendientes.
+     */
+    private void evictSubtree(MutableTreeNode node) {
+        Object userObject = getUserObject(node);
+        if (userObject instanceof Component) {
+            right.evict((Component) userObject);
+        }
+        for (int i = 0; i < node.getChildCount(); i++) {
+            evictSubtree((MutableTreeNode) node.getChildAt(i));
+        }
+    }
+
+    /**
+     * Si se ha descartado el componente que se mostraba, muestra el del nodo
+     * seleccionado o, si no hay ninguno, el de la raíz.
+     */
+    private void restoreShownComponent() {
+        if (right.getVisible() != null) {
+            return;
+        }
+        Object userObject = getUserObject(tree.getLastSelectedPathComponent());
+        right.show((Component) (userObject instanceof Component ? userObject : getRoot().getUserObject()));
+    }
+
+    /**
+     * Añade el nodo al índice si su contenido es un componente. Si el
+     * componente ya estaba indexado en otro nodo se conserva el anterior.
+     */
+    private void indexNode(MutableTreeNode node) {
+        nameIndex.add(node);
+        Object userObject = getUserObject(node);
+        if (userObject instanceof Component && !componentNodes.containsKey(userObject)) {
+            componentNodes.put((Component) userObject, node);
+            nodeComponents.put(node, (Component) userObject);
+        }
+    }
+
+    /**
+     * Elimina el nodo del índice.
+     */
+    private void unindexNode(MutableTreeNode node) {
+        nameIndex.remove(node);
+        Component comp = nodeComponents.remove(node);
+        if (comp != null && componentNodes.get(comp) == node) {
+            componentNodes.remove(comp);
+        }
+    }
+
+    /**
+     * Obtiene el contenido de un nodo compatible con esta clase.
+     */
+    private static Object getUserObject(Object node) {
+        if (node instanceof DefaultMutableTreeNode) {
+            return ((DefaultMutableTreeNode) node).getUserObject();
+        } else if (node instanceof TreeNode) {
+            return ((TreeNode) node).getUserObject();
+        }
+        return null;
+    }
+
+    /**
+     * Recorre recursivamente todos los componentes a partir de un nodo
+     */
+    private void forEachComponent(MutableTreeNode node, Consumer<? super Component> action) {
+        for (int i = 0; i < node.getChildCount(); i++) {
+            MutableTreeNode child = (MutableTreeNode) node.getChildAt(i);
+            Object userObject = getUserObject(child);
+            if (userObject instanceof Component) { // Si el contenido es un componente
+                action.accept((Component) userObject);
             }
-            getComponents(child, list); // Se sigue recursivamente por los hijos
+            forEachComponent(child, action); // Se sigue recursivamente por los hijos
         }
     }
 
+    /**
+     * Descarta los componentes guardados y avisa de que han podido cambiar.
+     */
+    private void invalidateComponents() {
+        components = null;
+        invalidateListeners();
+    }
+
     /**
      * Limita el número de nodos visibles al máximo establecido.
      */
@@ -582,10 +954,268 @@ public class TreeViewPanel extends ExtensiblePanel {
      * Si esta GUI está en una ventana, la avisa para que se reajuste.
      */
     private void pack() {
-        Window window = (Window) SwingUtilities.getWindowAncestor(this);
-        if (window != null) {
-            window.pack();
+        Frame.repackAncestor(this);
+    }
+
+    /**
+     * Contenedor de la parte derecha. Mantiene como fichas de un
+     * {@link CardLayout} los últimos componentes mostrados, de forma que
+     * volver a uno de ellos solo cambia la ficha visible. Sus tamaños son los
+     * de la ficha visible y no los de la mayor, como haría el layout.
+     */
+    private static class CardHost extends JPanel {
 
+        private final CardLayout cards = new CardLayout();
+        private final LinkedHashMap<Component, String> names = new LinkedHashMap<>(16, 0.75f, true); // Nombre de cada ficha, en orden de uso
+        private Component visible;
+        private int maxCards = 8;
+        private int nextName;
+
+        private CardHost() {
+            setLayout(cards);
+        }
+
+        /**
+         * Muestra el componente, añadiéndolo como ficha si no lo estaba.
+         *
+         * @return si su tamaño preferido es distinto del que se mostraba, en
+         * cuyo caso se ha invalidado el contenedor
+         */
+        public boolean show(Component comp) {
+            if (comp == visible && comp.getParent() == this) {
+                return false;
+            }
+            Dimension previous = visible == null ? null : visible.getPreferredSize();
+            String name = names.get(comp);
+            if (name == null) {
+                name = Integer.toString(nextName++);
+                names.put(comp, name);
+            }
+            if (comp.getParent() != this) { // Puede que otro contenedor lo haya sacado
+                add(comp, name);
+            }
+            visible = comp;
+            cards.show(this, name);
+            trim();
+            if (comp.getPreferredSize().equals(previous)) {
+                return false;
+            }
+            revalidate();
+            return true;
+        }
+
+        /**
+         * Quita el componente si estaba como ficha.
+         */
+        public void evict(Component comp) {
+            if (names.remove(comp) != null && comp.getParent() == this) {
+                remove(comp);
+                comp.setVisible(true); // El layout lo ocultó al mostrar otra ficha
+            }
+            if (comp == visible) {
+                visible = null;
+            }
+        }
+
+        public Component getVisible() {
+            return visible;
+        }
+
+        public List<Component> getCachedComponents() {
+            return new ArrayList<>(names.keySet());
+        }
+
+        public void setMaximumCards(int max) {
+            maxCards = Math.max(1, max);
+            trim();
+        }
+
+        public int getMaximumCards() {
+            return maxCards;
+        }
+
+        /**
+         * Quita las fichas que superan el límite, empezando por la que lleva
+         * más tiempo sin mostrarse.
+         */
+        private void trim() {
+            Iterator<Component> i = names.keySet().iterator();
+            while (names.size() > maxCards && i.hasNext()) {
+                Component comp = i.next();
+                if (comp != visible) {
+                    i.remove();
+                    if (comp.getParent() == this) {
+                        remove(comp);
+                        comp.setVisible(true); // El layout lo ocultó al mostrar otra ficha
+                    }
+                }
+            }
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            return visible == null || isPreferredSizeSet() ? super.getPreferredSize() : visible.getPreferredSize();
+        }
+
+        @Override
+        public Dimension getMinimumSize() {
+            return visible == null || isMinimumSizeSet() ? super.getMinimumSize() : visible.getMinimumSize();
+        }
+
+        @Override
+        public Dimension getMaximumSize() {
+            return visible == null || isMaximumSizeSet() ? super.getMaximumSize() : visible.getMaximumSize();
+        }
+
+    }
+
+    /**
+     * Índice de los nodos por su nombre en minúsculas. Un mapa ordenado
+     * resuelve las búsquedas por prefijo y un índice de trigramas las de texto
+     * en cualquier posición, comprobando solo los nodos que contienen el
+     * trigrama menos frecuente del texto.
+     */
+    private static class NameIndex {
+
+        private final TreeMap<String, List<MutableTreeNode>> names = new TreeMap<>();
+        private final Map<MutableTreeNode, String> nodeNames = new IdentityHashMap<>(); // Nombre con el que se indexó cada nodo
+        private final Map<String, Set<MutableTreeNode>> trigrams = new HashMap<>();
+
+        public void add(MutableTreeNode node) {
+            String name = node.toString();
+            if (name == null) {
+                return;
+            }
+            remove(node); // Por si ya estaba con otro nombre
+            name = name.toLowerCase(Locale.ROOT); // Independiente del idioma del sistema
+            nodeNames.put(node, name);
+            List<MutableTreeNode> list = names.get(name);
+            if (list == null) {
+                list = new ArrayList<>(1);
+                names.put(name, list);
+            }
+            list.add(node);
+            for (int i = 0; i + 3 <= name.length(); i++) {
+                String trigram = name.substring(i, i + 3);
+                Set<MutableTreeNode> set = trigrams.get(trigram);
+                if (set == null) {
+                    set = Collections.newSetFromMap(new IdentityHashMap<MutableTreeNode, Boolean>());
+                    trigrams.put(trigram, set);
+                }
+                set.add(node);
+            }
+        }
+
+        public void remove(MutableTreeNode node) {
+            String name = nodeNames.remove(node);
+            if (name == null) {
+                return;
+            }
+            List<MutableTreeNode> list = names.get(name);
+            list.remove(node);
+            if (list.isEmpty()) {
+                names.remove(name);
+            }
+            for (int i = 0; i + 3 <= name.length(); i++) {
+                String trigram = name.substring(i, i + 3);
+                Set<MutableTreeNode> set = trigrams.get(trigram);
+                if (set != null) {
+                    set.remove(node);
+                    if (set.isEmpty()) {
+                        trigrams.remove(trigram);
+                    }
+                }
+            }
+        }
+
+        public void clear() {
+            names.clear();
+            nodeNames.clear();
+            trigrams.clear();
+        }
+
+        /**
+         * Obtiene en orden alfabético los nodos cuyo nombre empieza por el
+         * prefijo.
+         */
+        public List<MutableTreeNode> startingWith(String prefix) {
+            prefix = prefix.toLowerCase(Locale.ROOT);
+            List<MutableTreeNode> result = new ArrayList<>();
+            for (List<MutableTreeNode> list : names.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+                result.addAll(list);
+            }
+            return result;
+        }
+
+        /**
+         * Obtiene la coincidencia del prefijo que sigue (o precede) a un nodo
+         * en orden alfabético, volviendo al principio (o al final) tras la
+         * última. Solo recorre las entradas vecinas del nodo, por lo que no
+         * depende del número de coincidencias.
+         *
+         * @param from el nodo desde el que se busca, o <code>null</code>
+         * @param forward si se busca hacia delante
+         * @param skip si se busca a partir del siguiente aunque el nodo
+         * coincida
+         * @return la coincidencia, o <code>null</code> si no hay ninguna
+         */
+        public MutableTreeNode nextMatch(String prefix, MutableTreeNode from, boolean forward, boolean skip) {
+            prefix = prefix.toLowerCase(Locale.ROOT);
+            String name = from == null ? null : nodeNames.get(from);
+            if (name != null && name.startsWith(prefix)) {
+                if (!skip) {
+                    return from;
+                }
+                List<MutableTreeNode> list = names.get(name);
+                int index = list.indexOf(from) + (forward ? 1 : -1); // Primero entre los del mismo nombre
+                if (index >= 0 && index < list.size()) {
+                    return list.get(index);
+                }
+                Map.Entry<String, List<MutableTreeNode>> entry = forward ? names.higherEntry(name) : names.lowerEntry(name);
+                if (entry != null && entry.getKey().startsWith(prefix)) {
+                    return forward ? entry.getValue().get(0) : entry.getValue().get(entry.getValue().size() - 1);
+                }
+            }
+            // La selección no coincide o era la última: se empieza por un extremo
+            Map.Entry<String, List<MutableTreeNode>> entry = forward ? names.ceilingEntry(prefix) : names.lowerEntry(prefix + Character.MAX_VALUE);
+            if (entry == null || !entry.getKey().startsWith(prefix)) {
+                return null;
+            }
+            return forward ? entry.getValue().get(0) : entry.getValue().get(entry.getValue().size() - 1);
+        }
+
+        /**
+         * Obtiene los nodos cuyo nombre contiene el texto, primero los que
+         * empiezan por él.
+         */
+        public List<MutableTreeNode> find(String text) {
+            text = text.toLowerCase(Locale.ROOT);
+            List<MutableTreeNode> result = startingWith(text);
+            if (text.length() < 3) { // Demasiado corto para los trigramas: se recorren los nombres
+                for (Map.Entry<String, List<MutableTreeNode>> entry : names.entrySet()) {
+                    if (!entry.getKey().startsWith(text) && entry.getKey().contains(text)) {
+                        result.addAll(entry.getValue());
+                    }
+                }
+                return result;
+            }
+            Set<MutableTreeNode> candidates = null; // Nodos del trigrama menos frecuente
+            for (int i = 0; i + 3 <= text.length(); i++) {
+                Set<MutableTreeNode> set = trigrams.get(text.substring(i, i + 3));
+                if (set == null) { // Ningún nombre tiene este trigrama
+                    return result;
+                }
+                if (candidates == null || set.size() < candidates.size()) {
+                    candidates = set;
+                }
+            }
+            for (MutableTreeNode node : candidates) {
+                String name = nodeNames.get(node);
+                if (!name.startsWith(text) && name.contains(text)) {
+                    result.add(node);
+                }
+            }
+            return result;
         }
     }
 
@@ -607,6 +1237,28 @@ public class TreeViewPanel extends ExtensiblePanel {
 
     }
 
+    /**
+     * Crea bajo demanda los hijos de un {@link Node}, de forma que el nodo
+     * puede indicar que tiene hijos sin que existan hasta que se expanda.
+     * Permite recorrer jerarquías enormes manteniendo en memoria solo las
+     * ramas que se han abierto.
+     *
+     * @see Node#setChildProvider
+     */
+    public interface ChildProvider {
+
+        /**
+         * Crea los hijos del nodo. Se llama la primera vez que se expande y,
+         * si el nodo libera sus hijos al colapsarse, cada vez que se vuelve a
+         * expandir.
+         *
+         * @param parent el nodo que se va a expandir
+         * @return los nodos hijo a añadirle
+         */
+        public Collection<? extends MutableTreeNode> createChildren(Node parent);
+
+    }
+
     /**
      * Clase que se ofrece como opción principal para ser usada como nodo en un
      * {@link TreeViewPanel}.
@@ -622,6 +1274,9 @@ public class TreeViewPanel extends ExtensiblePanel {
     public static class Node extends DefaultMutableTreeNode implements TreeNode {
 
         private PropertyChangeListener listener;
+        private ChildProvider childProvider;
+        private boolean childrenLoaded;
+        private boolean releaseOnCollapse;
 
         /**
          * Crea un nodo vacío.
@@ -688,6 +1343,145 @@ public class TreeViewPanel extends ExtensiblePanel {
             }
         }
 
+        /**
+         * Añade un conjunto de nodos como hijos de este nodo. Si está en un
+         * {@link TreeViewPanel} se añaden a través de él con
+         * {@link TreeViewPanel#insertNodesInto}, de forma que se le avisa una
+         * única vez.
+         *
+         * @param children los nodos hijo a añadir
+         */
+        public void addChildren(Collection<? extends MutableTreeNode> children) {
+            javax.swing.tree.TreeNode root = getRoot();
+            if (root instanceof Root) {
+                ((Root) root).getTreeViewPanel().insertNodesInto(children, this);
+            } else {
+                for (MutableTreeNode child : children) {
+                    super.add(child);
+                }
+            }
+        }
+
+        /**
+         * Establece la forma de crear los hijos de este nodo cuando se expanda
+         * por primera vez. Mientras no se hayan creado el nodo se muestra como
+         * expandible aunque no tenga hijos, y sus descendientes no forman parte
+         * de los componentes del árbol.
+         *
+         * @param childProvider el creador de los hijos, o <code>null</code>
+         * para que el nodo solo tenga los que se le añadan directamente
+         */
+        public void setChildProvider(ChildProvider childProvider) {
+            this.childProvider = childProvider;
+            childrenLoaded = false;
+        }
+
+        /**
+         * Obtiene la forma de crear los hijos de este nodo.
+         *
+         * @return el creador de los hijos, o <code>null</code> si no tiene
+         */
+        public ChildProvider getChildProvider() {
+            return childProvider;
+        }
+
+        /**
+         * Establece si los hijos creados por el {@link ChildProvider} se
+         * liberan al colapsar el nodo, para volver a crearse al expandirlo de
+         * nuevo. Solo se liberan si no tienen cambios sin guardar, como se
+         * explica en {@link #releaseChildren}.
+         *
+         * @param releaseOnCollapse si se liberan los hijos al colapsar
+         */
+        public void setReleaseOnCollapse(boolean releaseOnCollapse) {
+            this.releaseOnCollapse = releaseOnCollapse;
+        }
+
+        /**
+         * Indica si los hijos creados por el {@link ChildProvider} se liberan
+         * al colapsar el nodo.
+         *
+         * @return si se liberan los hijos al colapsar
+         */
+        public boolean isReleaseOnCollapse() {
+            return releaseOnCollapse;
+        }
+
+        /**
+         * Crea los hijos del nodo con su {@link ChildProvider} si aún no se
+         * habían creado. Lo llama automáticamente el {@link TreeViewPanel} antes
+         * de expandir el nodo.
+         */
+        public void loadChildren() {
+            if (childProvider == null || childrenLoaded) {
+                return;
+            }
+            childrenLoaded = true;
+            Collection<? extends MutableTreeNode> children = childProvider.createChildren(this);
+            if (children.isEmpty()) { // Ahora se sabe que es una hoja y hay que quitarle el aspecto de expandible
+                javax.swing.tree.TreeNode root = getRoot();
+                if (root instanceof Root) {
+                    ((Root) root).getModel().nodeChanged(this);
+                }
+            } else {
+                addChildren(children);
+            }
+        }
+
+        /**
+         * Libera los hijos del nodo para que se vuelvan a crear con su
+         * {@link ChildProvider} la próxima vez que se expanda, limpiando antes
+         * el contenido de todos sus descendientes.
+         * <p>
+         * Nunca se guarda nada al liberar, ya que eso solo debe ocurrir al
+         * aceptar la ventana. Por eso no se liberan si algún descendiente puede
+         * tener cambios sin guardar: si es una GUI extensible que no lleva la
+         * cuenta de sus cambios (ver {@link ExtensiblePanel#setTrackChanges})
+         * o que tiene cambios, o si es otro {@link WindowCloseListener}, cuyos
+         * cambios no se pueden conocer.
+         *
+         * @return <code>true</code> si se liberaron los hijos
+         */
+        public boolean releaseChildren() {
+            if (childProvider == null || !childrenLoaded) {
+                return false;
+            }
+            Collection<MutableTreeNode> descendants = getDescendants();
+            for (MutableTreeNode node : descendants) { // Se comprueba todo antes de limpiar nada
+                Object object = TreeViewPanel.getUserObject(node);
+                if (object instanceof ExtensiblePanel ? ((ExtensiblePanel) object).isDirty() : object instanceof WindowCloseListener) {
+                    return false; // Se conserva la rama hasta aceptar o cancelar
+                }
+            }
+            for (MutableTreeNode node : descendants) {
+                Object object = TreeViewPanel.getUserObject(node);
+                if (object instanceof ExtensiblePanel) {
+                    ((ExtensiblePanel) object).cleanAll();
+                }
+            }
+            childrenLoaded = false;
+            int[] indices = new int[getChildCount()];
+            Object[] children = new Object[getChildCount()];
+            for (int i = 0; i < children.length; i++) {
+                indices[i] = i;
+                children[i] = getChildAt(i);
+            }
+            removeAllChildren();
+            javax.swing.tree.TreeNode root = getRoot();
+            if (root instanceof Root && children.length > 0) { // Se avisa con un único evento
+                ((Root) root).getModel().nodesWereRemoved(this, indices, children);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            if (childProvider != null && !childrenLoaded) { // Puede tener hijos que aún no se han creado
+                return false;
+            }
+            return super.isLeaf();
+        }
+
         /**
          * Elimina el nodo hijo especificado por el índice de este nodo.
          * <p>
@@ -736,6 +1530,23 @@ public class TreeViewPanel extends ExtensiblePanel {
             return list;
         }
 
+        /**
+         * Obtiene un flujo con todos los descendientes de este nodo en
+         * preorden, igual que {@link #getDescendants()}, pero sin copiarlos
+         * antes en ninguna colección.
+         * <p>
+         * Los nodos se recorren a medida que se consumen, y al paralelizarlo
+         * con {@link Stream#parallel()} la jerarquía se reparte entre los
+         * hilos por ramas. La jerarquía no debe modificarse mientras se
+         * recorre, lo que se cumple por ejemplo consultándola desde el hilo de
+         * eventos o desde una tarea lanzada cuando ya no va a cambiar.
+         *
+         * @return los descendientes del nodo
+         */
+        public Stream<MutableTreeNode> descendants() {
+            return StreamSupport.stream(new DescendantSpliterator(this), false);
+        }
+
         /**
          * Obtiene recursivamente los descendientes de un nodo.
          */
@@ -750,6 +1561,222 @@ public class TreeViewPanel extends ExtensiblePanel {
 
     }
 
+    /**
+     * Recorre en preorden los descendientes de un nodo.
+     * <p>
+     * Guarda el trabajo pendiente como una pila de tramos de hijos de un mismo
+     * padre, cada uno junto a sus ramas, en el orden en que se recorrerán. Al
+     * dividirse se parte por la mitad el tramo más cercano a la raíz, que es
+     * el que más nodos suele abarcar, de forma que las dos partes quedan
+     * equilibradas y se conserva el orden.
+     */
+    private static class DescendantSpliterator implements Spliterator<MutableTreeNode> {
+
+        private final Deque<Pending> stack; // Lo primero en recorrerse está al principio
+        private long estimate;
+
+        public DescendantSpliterator(javax.swing.tree.TreeNode node) {
+            stack = new ArrayDeque<>();
+            stack.push(new Pending(node, 0, node.getChildCount()));
+            estimate = Long.MAX_VALUE; // No se conoce sin recorrerlo
+        }
+
+        private DescendantSpliterator(Deque<Pending> stack, long estimate) {
+            this.stack = stack;
+            this.estimate = estimate;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super MutableTreeNode> action) {
+            while (!stack.isEmpty()) {
+                Pending pending = stack.peek();
+                if (pending.single != null) { // Un nodo sin sus ramas
+                    stack.pop();
+                    action.accept((MutableTreeNode) pending.single);
+                    return true;
+                }
+                if (pending.lo >= pending.hi) { // Tramo terminado
+                    stack.pop();
+                    continue;
+                }
+                javax.swing.tree.TreeNode child = pending.parent.getChildAt(pending.lo++);
+                if (child.getChildCount() > 0) { // Sus hijos van antes que sus hermanos
+                    stack.push(new Pending(child, 0, child.getChildCount()));
+                }
+                action.accept((MutableTreeNode) child);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<MutableTreeNode> trySplit() {
+            Pending bottom = stack.peekLast();
+            while (bottom != null && bottom.single == null && bottom.lo >= bottom.hi) { // Se descartan los tramos terminados
+                stack.pollLast();
+                bottom = stack.peekLast();
+            }
+            if (bottom == null) {
+                return null;
+            }
+            Deque<Pending> prefix = new ArrayDeque<>();
+            if (bottom.single == null && bottom.hi - bottom.lo >= 2) { // Se parte el tramo por la mitad
+                int mid = (bottom.lo + bottom.hi) >>> 1;
+                stack.pollLast();
+                prefix.addAll(stack);
+                prefix.addLast(new Pending(bottom.parent, bottom.lo, mid));
+                stack.clear();
+                stack.push(new Pending(bottom.parent, mid, bottom.hi));
+            } else if (stack.size() > 1) { // Se separa lo pendiente por encima del último tramo
+                stack.pollLast();
+                prefix.addAll(stack);
+                stack.clear();
+                stack.push(bottom);
+            } else if (bottom.single == null) { // Queda un único hijo: se separa él de sus ramas
+                javax.swing.tree.TreeNode child = bottom.parent.getChildAt(bottom.lo);
+                if (child.getChildCount() == 0) {
+                    return null;
+                }
+                prefix.push(new Pending(child));
+                stack.clear();
+                stack.push(new Pending(child, 0, child.getChildCount()));
+            } else {
+                return null;
+            }
+            estimate >>>= 1;
+            return new DescendantSpliterator(prefix, estimate);
+        }
+
+        @Override
+        public long estimateSize() {
+            return estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
+        }
+
+        /**
+         * Trabajo pendiente: los hijos de un padre entre dos índices junto con
+         * sus ramas, o un único nodo sin ellas.
+         */
+        private static class Pending {
+
+            private final javax.swing.tree.TreeNode parent;
+            private final javax.swing.tree.TreeNode single;
+            private int lo;
+            private final int hi;
+
+            public Pending(javax.swing.tree.TreeNode parent, int lo, int hi) {
+                this.parent = parent;
+                this.single = null;
+                this.lo = lo;
+                this.hi = hi;
+            }
+
+            public Pending(javax.swing.tree.TreeNode single) {
+                this.parent = null;
+                this.single = single;
+                this.lo = 0;
+                this.hi = 0;
+            }
+        }
+    }
+
+    /**
+     * Nodo cuyo contenido se crea de forma perezosa la primera vez que se
+     * selecciona en el {@link TreeViewPanel}.
+     * <p>
+     * Hasta entonces se muestra en la jerarquía con el nombre indicado y no
+     * tiene contenido, por lo que no forma parte de los componentes del árbol y
+     * los eventos de validar, guardar y limpiar no se propagan a él. Es útil
+     * para jerarquías con muchos nodos de los que el usuario solo visitará
+     * unos pocos, ya que el coste de abrir la GUI no dependerá del número de
+     * nodos sino de los visitados.
+     */
+    public static class LazyNode extends Node {
+
+        private Supplier<? extends Component> supplier;
+        private String name;
+
+        /**
+         * Crea un nodo que obtendrá su contenido del proveedor cuando se
+         * seleccione por primera vez.
+         *
+         * @param name el nombre a mostrar mientras no se haya creado el
+         * contenido
+         * @param supplier el proveedor del contenido
+         */
+        public LazyNode(String name, Supplier<? extends Component> supplier) {
+            super();
+            this.name = name;
+            this.supplier = supplier;
+        }
+
+        /**
+         * Indica si ya se ha creado el contenido de este nodo.
+         *
+         * @return <code>true</code> si ya se ha creado
+         */
+        public boolean isRealized() {
+            return supplier == null;
+        }
+
+        /**
+         * Crea el contenido de este nodo si aún no se había creado.
+         *
+         * @return el contenido del nodo
+         */
+        public Object realize() {
+            if (supplier != null) {
+                Component comp = supplier.get(); // Si falla se conserva el proveedor y se reintentará
+                setUserObject(comp); // Quita el proveedor antes de avisar a los listeners, así que no se vuelve a crear desde ellos
+            }
+            return getUserObject();
+        }
+
+        /**
+         * Obtiene el nombre que se muestra en la jerarquía.
+         *
+         * @return el nombre del nodo
+         */
+        public String getName() {
+            return isRealized() ? toString() : name;
+        }
+
+        /**
+         * Establece el nombre que se muestra en la jerarquía. Si ya se ha
+         * creado el contenido se le cambia a él el nombre.
+         *
+         * @param name el nombre
+         */
+        public void setName(String name) {
+            this.name = name;
+            Object object = getUserObject();
+            if (isRealized() && object instanceof Component) {
+                ((Component) object).setName(name); // El listener del nodo se encarga de actualizar la jerarquía
+            } else {
+                javax.swing.tree.TreeNode root = getRoot();
+                if (root instanceof Root) {
+                    ((Root) root).getModel().nodeChanged(this);
+                }
+            }
+        }
+
+        @Override
+        public void setUserObject(Object userObject) {
+            supplier = null; // Si se establece explícitamente ya no se creará
+            super.setUserObject(userObject);
+        }
+
+        @Override
+        public String toString() {
+            return isRealized() ? super.toString() : name;
+        }
+
+    }
+
     /**
      * Representa la raíz de una jerarquía de nodos en un {@link TreeViewPanel}.
      * <p>
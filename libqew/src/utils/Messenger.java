@@ -16,33 +16,97 @@
  */
 package utils;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 /**
- * Proporciona un mecanismo para paso de mensajes de forma síncrona.
+ * Proporciona un mecanismo para paso de mensajes entre componentes desacoplados.
  * <p>
- * Los mensajes enviados serán redirigidos directamente a los {@link MessageReceiver} asociados y no
- * se guardarán en memoria.
+ * Los mensajes enviados se entregan a los {@link MessageReceiver} asociados según la política con
+ * la que se registró cada uno:<ul>
+ * <li><strong>En línea</strong> ({@link Delivery#INLINE}, por defecto): en el propio hilo que
+ * envía, antes de que vuelva {@link #send}.</li>
+ * <li><strong>Hilo de eventos</strong> ({@link Delivery#EDT}): en el hilo de eventos de Swing, en
+ * orden de envío.</li>
+ * <li><strong>Ejecutor</strong>: en el {@link Executor} indicado al registrarlo.</li>
+ * </ul>
+ * Además, los mensajes enviados con {@link #sendCoalesced} se agrupan por clave y solo se entrega
+ * el último, más tarde y en el hilo de eventos. Salvo estos, los mensajes no se guardan en memoria:
+ * si no hay listeners para una clave se descartan.
  * <p>
  * Permite ser usado globalmente mediante sus métodos estáticos o en un ámbito reducido creando y
  * usando una instancia particular. De esta forma podrían convivir varias instancias, cada una con
  * su propio espacio de claves, lo que evita conflictos si coincide alguna clave entre ellas y
  * proporciona control y seguridad al restringir su visibilidad.
+ * <p>
+ * El envío no bloquea: cada clave guarda un array inmutable de listeners que se sustituye por una
+ * copia al añadir o eliminar uno, por lo que un listener lento no retiene a otros hilos que envíen
+ * mensajes, y un listener puede añadir o eliminar listeners mientras recibe un mensaje sin afectar
+ * al envío en curso, que se completa con los que había al empezar.
+ * <p>
+ * Con las entregas en el hilo de eventos o en un ejecutor quien envía el mensaje no espera a que el
+ * listener lo reciba.
+ * <p>
+ * Las claves de tipo {@link String} pueden formar una jerarquía de temas separando sus niveles con
+ * <code>/</code>, como <code>enemy/42/speed</code>. Un listener puede registrarse con comodines
+ * para recibir los mensajes de toda una familia de claves: un nivel <code>*</code> equivale a
+ * cualquier nivel y uno <code>**</code> a cualquier número de niveles, incluido ninguno. Por
+ * ejemplo, <code>enemy/*&#47;speed</code> recibe la velocidad de todos los enemigos y
+ * <code>enemy/42/**</code> todas las claves del enemigo 42. Los listeners registrados con la clave
+ * exacta reciben el mensaje antes que los registrados con comodines, y un listener registrado con
+ * varios patrones que coincidan con la clave lo recibe una vez por cada uno.
+ * <p>
+ * Normalmente el {@link Messenger} mantiene vivos los listeners registrados hasta que se eliminan.
+ * Los registrados con {@link #addWeak} en cambio se eliminan solos cuando no quedan más referencias
+ * a ellos, lo que evita que una GUI que no los elimine al cerrarse permanezca en memoria. Quien los
+ * registra debe por tanto guardar una referencia mientras quiera recibir mensajes, por ejemplo en
+ * un campo de la GUI. {@link #getReceiverCounts} permite comprobar cuántos siguen registrados.
  *
  * @author Alejandro Hernández Ferrero
  */
 public class Messenger {
 
-  private static Messenger instance;
+  private static final Messenger INSTANCE = new Messenger();
+  private static final Object NULL = new Object(); // Sustituye a null, que los mapas no admiten como clave ni como valor
+
+  private static final EdtQueue EDT_QUEUE = new EdtQueue(); // Entregas pendientes en el hilo de eventos
+  private static final ThreadLocal<Matches> MATCHES = new ThreadLocal<Matches>() { // Buffer de cada hilo para los patrones que coinciden
+    @Override
+    protected Matches initialValue() {
+      return new Matches();
+    }
+  };
 
-  private final HashMap<Object, LinkedHashSet<MessageReceiver>> receivers;
+  private final ConcurrentHashMap<Object, Subscription[]> receivers; // Listeners de cada clave en orden de registro
+  private final ReferenceQueue<MessageReceiver> collected; // Listeners débiles que han sido eliminados por el recolector
+  private volatile TopicNode topics; // Árbol inmutable de los patrones con comodines, o null si no hay ninguno
+  private final ConcurrentHashMap<Object, Object> coalesced; // Último mensaje pendiente de cada clave enviado con sendCoalesced
+  private final Coalescer coalescer;
 
   /**
    * Crea una instancia que permite reducir el ámbito de los mensajes a las clases que la usen.
    */
   public Messenger() {
-    this.receivers = new HashMap(0);
+    this.receivers = new ConcurrentHashMap<>(16, 0.75f, 1);
+    this.collected = new ReferenceQueue<>();
+    this.coalesced = new ConcurrentHashMap<>(16, 0.75f, 1);
+    this.coalescer = new Coalescer();
   }
 
   /**
@@ -51,28 +115,146 @@ public class Messenger {
    * @param key la clave
    * @param message el mensaje
    */
-  public synchronized void send(Object key, Object message) {
-    LinkedHashSet<MessageReceiver> list = receivers.get(key);
+  public void send(Object key, Object message) {
+    purge();
+    Subscription[] list = receivers.get(mapKey(key)); // No se modifica nunca, solo se sustituye
     if (list != null) { // Si tiene listeners asociados
-      for (MessageReceiver receiver : list) {
-        receiver.receive(key, message); // Se les redirige el mensaje
+      for (Subscription subscription : list) {
+        subscription.deliver(key, message); // Se les redirige el mensaje
+      }
+    }
+    TopicNode root = topics;
+    if (root != null && key instanceof String && root.mayMatch((String) key)) { // Si algún patrón puede coincidir
+      Matches matches = MATCHES.get();
+      int previousBase = matches.base;
+      int base = matches.size; // Los envíos desde un listener usan la parte siguiente del buffer
+      matches.base = base;
+      try {
+        root.match((String) key, 0, matches);
+        int end = matches.size;
+        for (int i = base; i < end; i++) {
+          for (Subscription subscription : matches.nodes[i].subscriptions) {
+            subscription.deliver(key, message);
+          }
+        }
+      } finally {
+        Arrays.fill(matches.nodes, base, matches.size, null);
+        matches.size = base;
+        matches.base = previousBase;
       }
     }
   }
 
+  /**
+   * Envía un mensaje asociado a una clave agrupándolo con los que se envíen a continuación.
+   * <p>
+   * El mensaje no se entrega inmediatamente sino en el hilo de eventos de Swing, en su siguiente
+   * ciclo o cuando pase el intervalo establecido con {@link #setCoalescingInterval}, y si antes se
+   * envía otro mensaje con la misma clave de esta forma, sustituye al anterior. Así solo se entrega
+   * el último valor de cada clave, lo que es útil para valores que cambian continuamente, como los
+   * de un elemento gráfico mientras se arrastra.
+   *
+   * @param key la clave
+   * @param message el mensaje
+   */
+  public void sendCoalesced(Object key, Object message) {
+    coalesced.put(mapKey(key), message == null ? NULL : message);
+    coalescer.schedule();
+  }
+
+  /**
+   * Establece cada cuánto tiempo se entregan los mensajes enviados con {@link #sendCoalesced}.
+   * <p>
+   * El valor por defecto es 0, con el que se entregan en el siguiente ciclo del hilo de eventos.
+   *
+   * @param millis el intervalo en milisegundos
+   */
+  public void setCoalescingInterval(int millis) {
+    coalescer.setInterval(millis);
+  }
+
+  /**
+   * Obtiene cada cuánto tiempo se entregan los mensajes enviados con {@link #sendCoalesced}.
+   *
+   * @return el intervalo en milisegundos
+   */
+  public int getCoalescingInterval() {
+    return coalescer.getInterval();
+  }
+
   /**
    * Añade un listener para que reciba los mensajes asociados con la clave que se envíen.
    *
    * @param key la clave
    * @param receiver el listener que recibirá los mensajes
    */
-  public synchronized void add(Object key, MessageReceiver receiver) {
-    LinkedHashSet<MessageReceiver> list = receivers.get(key);
-    if (list == null) { // Si es el primero se crea un nuevo conjunto
-      list = new LinkedHashSet<>(2);
-      receivers.put(key, list);
+  public void add(Object key, MessageReceiver receiver) {
+    add(key, new Subscription(receiver, null));
+  }
+
+  /**
+   * Añade un listener para que reciba los mensajes asociados con la clave que se envíen de la forma
+   * indicada.
+   * <p>
+   * Si el listener ya estaba registrado con la clave se mantiene la forma de entrega anterior.
+   *
+   * @param key la clave
+   * @param receiver el listener que recibirá los mensajes
+   * @param delivery la forma de entrega
+   */
+  public void add(Object key, MessageReceiver receiver, Delivery delivery) {
+    add(key, new Subscription(receiver, delivery == Delivery.EDT ? EDT_QUEUE : null));
+  }
+
+  /**
+   * Añade un listener para que reciba en el {@link Executor} indicado los mensajes asociados con la
+   * clave que se envíen.
+   * <p>
+   * Quien envía el mensaje no espera a que se entregue. El orden de entrega será el del
+   * {@link Executor}, por lo que solo se mantendrá el orden de envío si este ejecuta las tareas de
+   * una en una. Si el listener ya estaba registrado con la clave se mantiene la forma de entrega
+   * anterior.
+   *
+   * @param key la clave
+   * @param receiver el listener que recibirá los mensajes
+   * @param executor el {@link Executor} en el que se entregarán los mensajes
+   */
+  public void add(Object key, MessageReceiver receiver, Executor executor) {
+    if (executor == null) {
+      throw new NullPointerException("executor");
+    }
+    add(key, new Subscription(receiver, executor));
+  }
+
+  /**
+   * Añade un listener para que reciba los mensajes asociados con la clave que se envíen, sin
+   * impedir que sea eliminado por el recolector de basura.
+   * <p>
+   * El listener seguirá recibiendo mensajes mientras quede alguna otra referencia a él, y cuando
+   * deje de haberlas se eliminará automáticamente. Si ya estaba registrado con la clave se mantiene
+   * el registro anterior.
+   *
+   * @param key la clave
+   * @param receiver el listener que recibirá los mensajes
+   */
+  public void addWeak(Object key, MessageReceiver receiver) {
+    add(key, new Subscription(key, receiver, collected));
+  }
+
+  /**
+   * Añade la suscripción si su listener no estaba ya registrado con la clave.
+   */
+  private synchronized void add(Object key, Subscription subscription) {
+    if (isPattern(key)) { // Se sustituye el camino hasta el patrón por una copia que lo incluye
+      topics = TopicNode.with(topics, ((String) key).split(TopicNode.SEPARATOR, -1), 0, subscription);
+      return;
+    }
+    key = mapKey(key);
+    Subscription[] list = receivers.get(key);
+    Subscription[] copy = with(list, subscription);
+    if (copy != list) {
+      receivers.put(key, copy);
     }
-    list.add(receiver);
   }
 
   /**
@@ -81,15 +263,157 @@ public class Messenger {
    * @param key la clave
    * @param receiver el listener a eliminar
    */
-  public synchronized void remove(Object key, MessageReceiver receiver) {
-    LinkedHashSet<MessageReceiver> list = receivers.get(key);
-    if (list == null) { // No hay listeners con esa clave así que no se hace nada
+  public void remove(Object key, MessageReceiver receiver) {
+    removeTarget(key, receiver);
+  }
+
+  /**
+   * Obtiene el número de listeners vivos registrados con cada clave o patrón.
+   * <p>
+   * Permite detectar listeners que no se eliminan: si el número de los registrados con una clave
+   * crece cada vez que se abre y cierra una GUI, esta no los está eliminando.
+   *
+   * @return un mapa con el número de listeners de cada clave o patrón que tenga alguno
+   */
+  public Map<Object, Integer> getReceiverCounts() {
+    purge();
+    Map<Object, Integer> counts = new HashMap<>();
+    for (Map.Entry<Object, Subscription[]> entry : receivers.entrySet()) {
+      int count = countAlive(entry.getValue());
+      if (count > 0) {
+        counts.put(unmapKey(entry.getKey()), count);
+      }
+    }
+    TopicNode root = topics;
+    if (root != null) {
+      root.count(new ArrayList<String>(), counts);
+    }
+    return counts;
+  }
+
+  /**
+   * Elimina los listeners débiles que ya ha eliminado el recolector de basura.
+   */
+  private void purge() {
+    Reference<? extends MessageReceiver> reference;
+    while ((reference = collected.poll()) != null) {
+      Subscription subscription = ((WeakReceiver) reference).subscription;
+      removeTarget(subscription.key, subscription);
+    }
+  }
+
+  /**
+   * Elimina de la clave la suscripción o el listener indicado.
+   */
+  private synchronized void removeTarget(Object key, Object target) {
+    if (isPattern(key)) {
+      topics = TopicNode.without(topics, ((String) key).split(TopicNode.SEPARATOR, -1), 0, target);
       return;
     }
-    list.remove(receiver);
-    if (list.isEmpty()) { // Si el conjunto queda vacío se quita
+    key = mapKey(key);
+    Subscription[] list = receivers.get(key);
+    Subscription[] copy = without(list, target);
+    if (copy == list) { // No estaba registrado así que no se hace nada
+      return;
+    }
+    if (copy == null) { // Si el array queda vacío se quita
       receivers.remove(key);
+    } else {
+      receivers.put(key, copy);
+    }
+  }
+
+  /**
+   * Indica si la clave es un patrón, es decir, un {@link String} con algún nivel comodín.
+   */
+  private static boolean isPattern(Object key) {
+    if (!(key instanceof String) || ((String) key).indexOf('*') == -1) {
+      return false;
+    }
+    for (String segment : ((String) key).split(TopicNode.SEPARATOR, -1)) {
+      if (segment.equals(TopicNode.ONE) || segment.equals(TopicNode.ANY)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Obtiene una copia del array con la suscripción añadida al final, o el mismo array si su listener
+   * ya estaba.
+   */
+  private static Subscription[] with(Subscription[] list, Subscription subscription) {
+    if (list == null) {
+      return new Subscription[]{subscription};
+    }
+    if (indexOf(list, subscription.getReceiver()) != -1) {
+      return list;
+    }
+    Subscription[] copy = Arrays.copyOf(list, list.length + 1);
+    copy[list.length] = subscription;
+    return copy;
+  }
+
+  /**
+   * Obtiene una copia del array sin la suscripción o el listener indicado, el mismo array si no
+   * estaba o <code>null</code> si queda vacío.
+   */
+  private static Subscription[] without(Subscription[] list, Object target) {
+    int index = list == null ? -1 : indexOf(list, target);
+    if (index == -1) {
+      return list;
+    }
+    if (list.length == 1) {
+      return null;
+    }
+    Subscription[] copy = new Subscription[list.length - 1];
+    System.arraycopy(list, 0, copy, 0, index);
+    System.arraycopy(list, index + 1, copy, index, copy.length - index);
+    return copy;
+  }
+
+  /**
+   * Obtiene la clave con la que se guarda en el mapa.
+   */
+  private static Object mapKey(Object key) {
+    return key == null ? NULL : key;
+  }
+
+  /**
+   * Obtiene la clave original a partir de la guardada en el mapa.
+   */
+  private static Object unmapKey(Object key) {
+    return key == NULL ? null : key;
+  }
+
+  /**
+   * Busca en un array una suscripción o la de un listener, o -1 si no está.
+   */
+  private static int indexOf(Subscription[] list, Object target) {
+    if (target == null) { // Un listener débil ya eliminado
+      return -1;
+    }
+    for (int i = 0; i < list.length; i++) {
+      if (list[i] == target || target.equals(list[i].getReceiver())) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Cuenta los listeners de un array que siguen vivos.
+   */
+  private static int countAlive(Subscription[] list) {
+    int count = 0;
+    if (list != null) {
+      for (Subscription subscription : list) {
+        if (subscription.getReceiver() != null) {
+          count++;
+        }
+      }
     }
+    return count;
   }
 
   /**
@@ -102,6 +426,17 @@ public class Messenger {
     getInstance().send(key, message);
   }
 
+  /**
+   * Envía un mensaje global asociado a una clave agrupándolo con los que se envíen a continuación.
+   *
+   * @param key la clave
+   * @param message el mensaje
+   * @see #sendCoalesced
+   */
+  public static void sendCoalescedMessage(Object key, Object message) {
+    getInstance().sendCoalesced(key, message);
+  }
+
   /**
    * Añade un listener para que reciba los mensajes globales asociados con la clave que se envíen.
    *
@@ -112,6 +447,32 @@ public class Messenger {
     getInstance().add(key, receiver);
   }
 
+  /**
+   * Añade un listener para que reciba los mensajes globales asociados con la clave que se envíen de
+   * la forma indicada.
+   *
+   * @param key la clave
+   * @param receiver el listener que recibirá los mensajes
+   * @param delivery la forma de entrega
+   * @see #add(Object, MessageReceiver, Delivery)
+   */
+  public static void addListener(Object key, MessageReceiver receiver, Delivery delivery) {
+    getInstance().add(key, receiver, delivery);
+  }
+
+  /**
+   * Añade un listener para que reciba en el {@link Executor} indicado los mensajes globales
+   * asociados con la clave que se envíen.
+   *
+   * @param key la clave
+   * @param receiver el listener que recibirá los mensajes
+   * @param executor el {@link Executor} en el que se entregarán los mensajes
+   * @see #add(Object, MessageReceiver, Executor)
+   */
+  public static void addListener(Object key, MessageReceiver receiver, Executor executor) {
+    getInstance().add(key, receiver, executor);
+  }
+
   /**
    * Elimina un listener para no que reciba más mensajes globales asociados con la clave.
    *
@@ -122,14 +483,476 @@ public class Messenger {
     getInstance().remove(key, receiver);
   }
 
+  /**
+   * Añade un listener para que reciba los mensajes globales asociados con la clave que se envíen,
+   * sin impedir que sea eliminado por el recolector de basura.
+   *
+   * @param key la clave
+   * @param receiver el listener que recibirá los mensajes
+   * @see #addWeak
+   */
+  public static void addWeakListener(Object key, MessageReceiver receiver) {
+    getInstance().addWeak(key, receiver);
+  }
+
+  /**
+   * Obtiene el número de listeners vivos registrados con cada clave o patrón global.
+   *
+   * @return un mapa con el número de listeners de cada clave o patrón que tenga alguno
+   * @see #getReceiverCounts
+   */
+  public static Map<Object, Integer> getListenerCounts() {
+    return getInstance().getReceiverCounts();
+  }
+
   /**
    * Obtiene la instancia global.
    */
-  private synchronized static Messenger getInstance() {
-    if (instance == null) {
-      instance = new Messenger();
+  private static Messenger getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Formas de entregar los mensajes a un listener.
+   */
+  public enum Delivery {
+
+    /**
+     * Se entregan directamente en el hilo que envía el mensaje, que espera a que el listener termine.
+     */
+    INLINE,
+    /**
+     * Se entregan en el hilo de eventos de Swing, en el orden en que se enviaron. Los mensajes
+     * enviados desde otros hilos se acumulan y se entregan todos juntos en una única tarea del hilo
+     * de eventos. Si se envían desde el propio hilo de eventos se entregan directamente, salvo que
+     * haya mensajes pendientes anteriores.
+     */
+    EDT
+
+  }
+
+  /**
+   * Un listener registrado junto con el {@link Executor} en el que recibe los mensajes, o
+   * <code>null</code> si los recibe directamente.
+   */
+  private static class Subscription {
+
+    private final MessageReceiver receiver; // null si es débil
+    private final WeakReceiver weak; // null si no es débil
+    private final Object key; // Clave o patrón con el que se registró un listener débil
+    private final Executor executor;
+
+    private Subscription(MessageReceiver receiver, Executor executor) {
+      this.receiver = receiver;
+      this.weak = null;
+      this.key = null;
+      this.executor = executor;
+    }
+
+    private Subscription(Object key, MessageReceiver receiver, ReferenceQueue<MessageReceiver> queue) {
+      this.receiver = null;
+      this.weak = new WeakReceiver(receiver, queue, this);
+      this.key = key;
+      this.executor = null;
+    }
+
+    /**
+     * Obtiene el listener, o <code>null</code> si era débil y ya se ha eliminado.
+     */
+    private MessageReceiver getReceiver() {
+      return weak == null ? receiver : weak.get();
+    }
+
+    private void deliver(final Object key, final Object message) {
+      final MessageReceiver current = getReceiver();
+      if (current == null) { // Se eliminará en el siguiente envío
+        return;
+      }
+      if (executor == null) {
+        current.receive(key, message);
+      } else if (executor == EDT_QUEUE && EDT_QUEUE.canRunNow()) {
+        current.receive(key, message);
+      } else {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              current.receive(key, message);
+            } catch (RuntimeException ex) { // Quien lo envió ya no puede tratarla
+              Logger.getLogger(Messenger.class.getName()).log(Level.SEVERE, null, ex);
+            }
+          }
+        });
+      }
+    }
+
+  }
+
+  /**
+   * Referencia débil a un listener que conoce su suscripción para poder eliminarla cuando el
+   * recolector de basura lo elimine.
+   */
+  private static class WeakReceiver extends WeakReference<MessageReceiver> {
+
+    private final Subscription subscription;
+
+    private WeakReceiver(MessageReceiver receiver, ReferenceQueue<MessageReceiver> queue, Subscription subscription) {
+      super(receiver, queue);
+      this.subscription = subscription;
+    }
+
+  }
+
+  /**
+   * Cola de entregas para el hilo de eventos. Las entregas que llegan mientras hay una tarea
+   * programada se añaden a ella, por lo que una ráfaga de mensajes ocupa una sola tarea.
+   */
+  private static class EdtQueue implements Executor, Runnable {
+
+    private final ConcurrentLinkedQueue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * Indica si se puede entregar directamente sin alterar el orden de los mensajes.
+     */
+    private boolean canRunNow() {
+      return SwingUtilities.isEventDispatchThread() && pending.isEmpty();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      pending.add(command);
+      if (scheduled.compareAndSet(false, true)) { // Si no hay una tarea programada se programa
+        SwingUtilities.invokeLater(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      do {
+        Runnable command;
+        while ((command = pending.poll()) != null) {
+          command.run();
+        }
+        scheduled.set(false);
+        // Puede haber llegado otra entrega antes de desmarcarla, que ya no programaría la tarea
+      } while (!pending.isEmpty() && scheduled.compareAndSet(false, true));
+    }
+
+  }
+
+  /**
+   * Nodo del árbol de patrones, con un hijo por cada nivel siguiente. Los nodos no se modifican
+   * nunca: al añadir o eliminar un patrón se copian los nodos de su camino, por lo que el envío puede
+   * recorrer el árbol sin bloquear. Los hijos de niveles literales se guardan en una tabla hash
+   * abierta que se consulta con un fragmento de la clave, para recorrerla sin partirla ni crear
+   * objetos.
+   */
+  private static class TopicNode {
+
+    private static final String SEPARATOR = "/";
+    private static final String ONE = "*";
+    private static final String ANY = "**";
+    private static final TopicNode EMPTY = new TopicNode(new String[0], new TopicNode[0], 0, null, null, null);
+
+    private final String[] names; // Niveles literales de los hijos, con una longitud potencia de 2
+    private final TopicNode[] nodes; // Hijo de cada nivel literal en la misma posición
+    private final int count; // Número de hijos literales
+    private final TopicNode one; // Hijo del nivel *, o null
+    private final TopicNode any; // Hijo del nivel **, o null
+    private final Subscription[] subscriptions; // Listeners de los patrones que terminan en este nodo, o null
+
+    private TopicNode(String[] names, TopicNode[] nodes, int count, TopicNode one, TopicNode any, Subscription[] subscriptions) {
+      this.names = names;
+      this.nodes = nodes;
+      this.count = count;
+      this.one = one;
+      this.any = any;
+      this.subscriptions = subscriptions;
+    }
+
+    /**
+     * Obtiene una copia del nodo con la suscripción añadida al patrón formado por los niveles a
+     * partir del indicado.
+     */
+    private static TopicNode with(TopicNode node, String[] segments, int i, Subscription subscription) {
+      if (node == null) {
+        node = EMPTY;
+      }
+      if (i == segments.length) {
+        Subscription[] copy = Messenger.with(node.subscriptions, subscription);
+        return copy == node.subscriptions ? node : node.withSubscriptions(copy);
+      }
+      TopicNode child = node.child(segments[i]);
+      TopicNode copy = with(child, segments, i + 1, subscription);
+      return copy == child ? node : node.withChild(segments[i], copy);
+    }
+
+    /**
+     * Obtiene una copia del nodo sin el listener en el patrón formado por los niveles a partir del
+     * indicado, o <code>null</code> si queda vacío. Se puede indicar el listener o su suscripción.
+     */
+    private static TopicNode without(TopicNode node, String[] segments, int i, Object target) {
+      if (node == null) {
+        return null;
+      }
+      TopicNode result;
+      if (i == segments.length) {
+        Subscription[] copy = Messenger.without(node.subscriptions, target);
+        if (copy == node.subscriptions) {
+          return node;
+        }
+        result = node.withSubscriptions(copy);
+      } else {
+        TopicNode child = node.child(segments[i]);
+        TopicNode copy = without(child, segments, i + 1, target);
+        if (copy == child) {
+          return node;
+        }
+        result = node.withChild(segments[i], copy); // Si ha quedado vacío se poda la rama
+      }
+      return result.count == 0 && result.one == null && result.any == null && result.subscriptions == null ? null : result;
+    }
+
+    /**
+     * Obtiene el hijo de un nivel del patrón.
+     */
+    private TopicNode child(String segment) {
+      if (segment.equals(ONE)) {
+        return one;
+      } else if (segment.equals(ANY)) {
+        return any;
+      }
+      return get(segment, 0, segment.length());
+    }
+
+    /**
+     * Obtiene el hijo del nivel literal que ocupa el fragmento de la clave entre las posiciones
+     * indicadas.
+     */
+    private TopicNode get(String key, int start, int end) {
+      if (count == 0) {
+        return null;
+      }
+      int length = end - start;
+      int mask = names.length - 1;
+      for (int i = hash(key, start, end) & mask; names[i] != null; i = (i + 1) & mask) {
+        if (names[i].length() == length && key.regionMatches(start, names[i], 0, length)) {
+          return nodes[i];
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Calcula el hash de un fragmento de la clave, igual que el de un {@link String} con ese texto.
+     */
+    private static int hash(String key, int start, int end) {
+      int h = 0;
+      for (int i = start; i < end; i++) {
+        h = 31 * h + key.charAt(i);
+      }
+      return h ^ (h >>> 16);
+    }
+
+    /**
+     * Obtiene una copia del nodo con otros listeners.
+     */
+    private TopicNode withSubscriptions(Subscription[] subscriptions) {
+      return new TopicNode(names, nodes, count, one, any, subscriptions);
+    }
+
+    /**
+     * Obtiene una copia del nodo con el hijo de un nivel sustituido, o eliminado si es
+     * <code>null</code>.
+     */
+    private TopicNode withChild(String segment, TopicNode child) {
+      if (segment.equals(ONE)) {
+        return new TopicNode(names, nodes, count, child, any, subscriptions);
+      } else if (segment.equals(ANY)) {
+        return new TopicNode(names, nodes, count, one, child, subscriptions);
+      }
+      int size = count + (child == null ? -1 : 0) + (get(segment, 0, segment.length()) == null ? 1 : 0);
+      int capacity = 2;
+      while (capacity < size * 2) { // Se mantiene al menos la mitad libre
+        capacity *= 2;
+      }
+      String[] newNames = new String[capacity];
+      TopicNode[] newNodes = new TopicNode[capacity];
+      for (int i = 0; i < names.length; i++) {
+        if (names[i] != null && !names[i].equals(segment)) {
+          put(newNames, newNodes, names[i], nodes[i]);
+        }
+      }
+      if (child != null) {
+        put(newNames, newNodes, segment, child);
+      }
+      return new TopicNode(newNames, newNodes, size, one, any, subscriptions);
+    }
+
+    private static void put(String[] names, TopicNode[] nodes, String name, TopicNode node) {
+      int mask = names.length - 1;
+      int i = hash(name, 0, name.length()) & mask;
+      while (names[i] != null) {
+        i = (i + 1) & mask;
+      }
+      names[i] = name;
+      nodes[i] = node;
+    }
+
+    /**
+     * Indica si algún patrón puede coincidir con la clave, comprobando solo su primer nivel.
+     */
+    private boolean mayMatch(String key) {
+      if (one != null || any != null) {
+        return true;
+      }
+      int end = key.indexOf('/');
+      return get(key, 0, end == -1 ? key.length() : end) != null;
+    }
+
+    /**
+     * Añade al mapa el número de listeners vivos de este nodo y sus descendientes, cuyos patrones
+     * empiezan por los niveles indicados.
+     */
+    private void count(List<String> path, Map<Object, Integer> counts) {
+      int alive = countAlive(subscriptions);
+      if (alive > 0) {
+        counts.put(String.join(SEPARATOR, path), alive);
+      }
+      for (int i = 0; i < names.length; i++) {
+        if (names[i] != null) {
+          countChild(names[i], nodes[i], path, counts);
+        }
+      }
+      countChild(ONE, one, path, counts);
+      countChild(ANY, any, path, counts);
+    }
+
+    private static void countChild(String segment, TopicNode child, List<String> path, Map<Object, Integer> counts) {
+      if (child != null) {
+        path.add(segment);
+        child.count(path, counts);
+        path.remove(path.size() - 1);
+      }
+    }
+
+    /**
+     * Añade los nodos de los patrones que coinciden con la clave a partir del nivel que empieza en
+     * la posición indicada, que es mayor que su longitud si ya no quedan niveles.
+     */
+    private void match(String key, int start, Matches matches) {
+      int length = key.length();
+      if (start > length) {
+        if (subscriptions != null) {
+          matches.add(this);
+        }
+      } else {
+        int end = key.indexOf('/', start);
+        if (end == -1) {
+          end = length;
+        }
+        TopicNode child = get(key, start, end);
+        if (child != null) {
+          child.match(key, end + 1, matches);
+        }
+        if (one != null) {
+          one.match(key, end + 1, matches);
+        }
+      }
+      if (any != null) { // Se prueba a saltar desde ninguno hasta todos los niveles restantes
+        int next = start;
+        while (true) {
+          any.match(key, next, matches);
+          if (next > length) {
+            break;
+          }
+          int end = key.indexOf('/', next);
+          next = end == -1 ? length + 1 : end + 1;
+        }
+      }
+    }
+
+  }
+
+  /**
+   * Buffer reutilizable de cada hilo con los nodos de los patrones que coinciden con la clave que se
+   * está enviando. Se usa como una pila para que un listener pueda enviar otro mensaje mientras
+   * recibe uno.
+   */
+  private static class Matches {
+
+    private TopicNode[] nodes = new TopicNode[8];
+    private int size;
+    private int base; // Inicio de los nodos del envío en curso
+
+    private void add(TopicNode node) {
+      for (int i = base; i < size; i++) {
+        if (nodes[i] == node) { // Con varios ** se puede llegar al mismo nodo por distintos caminos
+          return;
+        }
+      }
+      if (size == nodes.length) {
+        nodes = Arrays.copyOf(nodes, size * 2);
+      }
+      nodes[size++] = node;
     }
-    return instance;
+
+  }
+
+  /**
+   * Entrega en el hilo de eventos los mensajes agrupados pendientes, programándose una sola vez
+   * para todos los que se envíen hasta que se entreguen.
+   */
+  private class Coalescer implements Runnable, ActionListener {
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile Timer timer; // null si se entregan en el siguiente ciclo
+
+    private void schedule() {
+      if (scheduled.compareAndSet(false, true)) {
+        Timer t = timer;
+        if (t == null) {
+          SwingUtilities.invokeLater(this);
+        } else {
+          t.start();
+        }
+      }
+    }
+
+    private synchronized void setInterval(int millis) {
+      if (millis <= 0) {
+        timer = null;
+      } else if (timer == null) {
+        Timer t = new Timer(millis, this);
+        t.setRepeats(false);
+        timer = t;
+      } else {
+        timer.setInitialDelay(millis);
+      }
+    }
+
+    private int getInterval() {
+      Timer t = timer;
+      return t == null ? 0 : t.getInitialDelay();
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+      run();
+    }
+
+    @Override
+    public void run() {
+      scheduled.set(false); // Los que lleguen a partir de ahora y no se entreguen ya se programarán de nuevo
+      for (Object key : coalesced.keySet()) {
+        Object message = coalesced.remove(key);
+        if (message != null) {
+          send(unmapKey(key), message == NULL ? null : message);
+        }
+      }
+    }
+
   }
 
   /**